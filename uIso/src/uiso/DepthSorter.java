@@ -0,0 +1,239 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+import java.util.Arrays;
+
+/**
+ * Sorts the sprite objects of the scene using their virtual bounding boxes (see {@link UIsoObject#setVirtualSize(int, int, int)}). Two boxes that do not intersect are
+ * separated by a plane perpendicular to one of the axes and the box on the smaller side of this plane must be drawn first. As only the objects whose images overlap on
+ * the screen need to be ordered, the objects are put in the cells of a grid that covers the viewport and only the pairs that share a cell are compared. The resulting
+ * dependency graph is sorted topologically, so the cost is O(n + overlaps).
+ * <p>
+ * The objects grid ({@link ObjectsGridManager}) is not used for this because its cells are at least half viewport wide and the objects are linked only to the cells of
+ * their corners.
+ * 
+ * @author luis
+ */
+class DepthSorter {
+	/* Package: */
+	DepthSorter(UIsoEngine isometric_engine, int max_objects) {
+		this.grid_w = (isometric_engine.viewport_w + CELL_SIZE - 1) >> CELL_SIZE_SHIFT;
+		this.grid_h = (isometric_engine.viewport_h + CELL_SIZE - 1) >> CELL_SIZE_SHIFT;
+		this.cell_first_entry = new int[this.grid_w * this.grid_h];
+		this.allocateObjectArrays(max_objects);
+
+		this.entry_object = new int[max_objects << 2];
+		this.entry_next = new int[max_objects << 2];
+		this.edge_to = new int[max_objects << 2];
+		this.edge_next = new int[max_objects << 2];
+	}
+
+	void sort(SceneObjectsBuffer scene_objects) {
+		int i, n_scene_objects = scene_objects.n_objects;
+
+		if (n_scene_objects < 2)
+			return;
+		/* The scene buffers can grow. */
+		if (n_scene_objects > this.queue.length)
+			this.allocateObjectArrays(scene_objects.capacity());
+
+		this.n_entries = this.n_edges = 0;
+		Arrays.fill(this.cell_first_entry, -1);
+
+		for (i = 0; i < n_scene_objects; i++) {
+			this.insertObject(scene_objects, i);
+		}
+		for (i = 0; i < this.cell_first_entry.length; i++) {
+			this.compareObjectsOfCell(scene_objects, i % this.grid_w, i / this.grid_w);
+		}
+		this.topologicalSort(scene_objects);
+	}
+
+	/* Private: */
+	private final static int CELL_SIZE_SHIFT = 6;
+	private final static int CELL_SIZE = 1 << CELL_SIZE_SHIFT;
+
+	private int grid_w, grid_h, n_entries, n_edges;
+	/* Bounding boxes: */
+	private int[] min_x, min_y, min_z, max_x, max_y, max_z;
+	/* Cells covered by the objects images: */
+	private int[] min_cell_x, min_cell_y, max_cell_x, max_cell_y;
+	/* Each cell has a linked list of entries (objects). */
+	private int[] cell_first_entry, entry_object, entry_next;
+	/* Dependency graph: each object has a linked list of edges to the objects that must be drawn after it. */
+	private int[] in_degree, first_edge, edge_to, edge_next;
+	private int[] queue;
+
+	private void allocateObjectArrays(int max_objects) {
+		this.min_x = new int[max_objects];
+		this.min_y = new int[max_objects];
+		this.min_z = new int[max_objects];
+		this.max_x = new int[max_objects];
+		this.max_y = new int[max_objects];
+		this.max_z = new int[max_objects];
+		this.min_cell_x = new int[max_objects];
+		this.min_cell_y = new int[max_objects];
+		this.max_cell_x = new int[max_objects];
+		this.max_cell_y = new int[max_objects];
+		this.in_degree = new int[max_objects];
+		this.first_edge = new int[max_objects];
+		this.queue = new int[max_objects];
+	}
+
+	private void insertObject(SceneObjectsBuffer scene_objects, int i) {
+		UIsoObject object = scene_objects.objects[i];
+
+		this.max_x[i] = object.getX();
+		this.max_y[i] = object.getY();
+		this.min_z[i] = object.getZ();
+		this.min_x[i] = this.max_x[i] - object.getVirtualSizeX();
+		this.min_y[i] = this.max_y[i] - object.getVirtualSizeY();
+		this.max_z[i] = this.min_z[i] + object.getVirtualSizeZ();
+		this.in_degree[i] = 0;
+		this.first_edge[i] = -1;
+
+		/* The objects of the scene intersect the viewport. */
+		this.min_cell_x[i] = Math.max(0, scene_objects.x[i]) >> CELL_SIZE_SHIFT;
+		this.min_cell_y[i] = Math.max(0, scene_objects.y[i]) >> CELL_SIZE_SHIFT;
+		this.max_cell_x[i] = Math.min(this.grid_w - 1, (scene_objects.x[i] + scene_objects.w[i] - 1) >> CELL_SIZE_SHIFT);
+		this.max_cell_y[i] = Math.min(this.grid_h - 1, (scene_objects.y[i] + scene_objects.h[i] - 1) >> CELL_SIZE_SHIFT);
+
+		for (int cell_y = this.min_cell_y[i]; cell_y <= this.max_cell_y[i]; cell_y++) {
+			for (int cell_x = this.min_cell_x[i]; cell_x <= this.max_cell_x[i]; cell_x++) {
+				int cell = cell_y * this.grid_w + cell_x;
+
+				if (this.n_entries == this.entry_object.length) {
+					this.entry_object = Arrays.copyOf(this.entry_object, this.n_entries << 1);
+					this.entry_next = Arrays.copyOf(this.entry_next, this.n_entries << 1);
+				}
+				this.entry_object[this.n_entries] = i;
+				this.entry_next[this.n_entries] = this.cell_first_entry[cell];
+				this.cell_first_entry[cell] = this.n_entries++;
+			}
+		}
+	}
+
+	private void compareObjectsOfCell(SceneObjectsBuffer scene_objects, int cell_x, int cell_y) {
+		for (int entry_a = this.cell_first_entry[cell_y * this.grid_w + cell_x]; entry_a != -1; entry_a = this.entry_next[entry_a]) {
+			int a = this.entry_object[entry_a];
+
+			for (int entry_b = this.entry_next[entry_a]; entry_b != -1; entry_b = this.entry_next[entry_b]) {
+				int b = this.entry_object[entry_b];
+
+				/* The pair is compared only in the first cell both objects cover. */
+				if (cell_x != Math.max(this.min_cell_x[a], this.min_cell_x[b]) || cell_y != Math.max(this.min_cell_y[a], this.min_cell_y[b]))
+					continue;
+				if (!this.doImagesOverlap(scene_objects, a, b))
+					continue;
+
+				if (this.mustBeDrawnBefore(a, b))
+					this.addEdge(a, b);
+				else
+					this.addEdge(b, a);
+			}
+		}
+	}
+
+	private boolean doImagesOverlap(SceneObjectsBuffer scene_objects, int a, int b) {
+		int[] x = scene_objects.x, y = scene_objects.y, w = scene_objects.w, h = scene_objects.h;
+
+		return x[a] < x[b] + w[b] && x[b] < x[a] + w[a] && y[a] < y[b] + h[b] && y[b] < y[a] + h[a];
+	}
+
+	/**
+	 * The view direction is (1, 1, 2) in virtual coordinates, so the box on the smaller side of a separating plane is farther from the viewer. An axis along which both
+	 * boxes have no extent does not separate them (two points with the same coordinate would be on both sides), so the next axis is tried.
+	 */
+	private boolean mustBeDrawnBefore(int a, int b) {
+		if (this.max_x[a] != this.min_x[a] || this.max_x[b] != this.min_x[b]) {
+			if (this.max_x[a] <= this.min_x[b])
+				return true;
+			if (this.max_x[b] <= this.min_x[a])
+				return false;
+		}
+		if (this.max_y[a] != this.min_y[a] || this.max_y[b] != this.min_y[b]) {
+			if (this.max_y[a] <= this.min_y[b])
+				return true;
+			if (this.max_y[b] <= this.min_y[a])
+				return false;
+		}
+		if (this.max_z[a] != this.min_z[a] || this.max_z[b] != this.min_z[b]) {
+			if (this.max_z[a] <= this.min_z[b])
+				return true;
+			if (this.max_z[b] <= this.min_z[a])
+				return false;
+		}
+
+		/* The boxes intersect: compare their centers. */
+		int a_depth = this.min_x[a] + this.max_x[a] + this.min_y[a] + this.max_y[a], b_depth = this.min_x[b] + this.max_x[b] + this.min_y[b] + this.max_y[b];
+		if (a_depth != b_depth)
+			return a_depth < b_depth;
+		if (this.min_z[a] + this.max_z[a] != this.min_z[b] + this.max_z[b])
+			return this.min_z[a] + this.max_z[a] < this.min_z[b] + this.max_z[b];
+		return a < b;
+	}
+
+	private void addEdge(int from, int to) {
+		if (this.n_edges == this.edge_to.length) {
+			this.edge_to = Arrays.copyOf(this.edge_to, this.n_edges << 1);
+			this.edge_next = Arrays.copyOf(this.edge_next, this.n_edges << 1);
+		}
+		this.edge_to[this.n_edges] = to;
+		this.edge_next[this.n_edges] = this.first_edge[from];
+		this.first_edge[from] = this.n_edges++;
+		this.in_degree[to]++;
+	}
+
+	/**
+	 * Kahn's algorithm. The objects without dependencies keep the order in which they were inserted in the scene. If there is a cycle (e.g, intersecting boxes), the
+	 * first object not drawn yet is drawn regardless of its dependencies.
+	 */
+	private void topologicalSort(SceneObjectsBuffer scene_objects) {
+		int head = 0, tail = 0, n_sorted = 0, next_candidate = 0, i, n_scene_objects = scene_objects.n_objects;
+		int[] order = scene_objects.order;
+
+		for (i = 0; i < n_scene_objects; i++) {
+			if (this.in_degree[i] == 0)
+				this.queue[tail++] = i;
+		}
+
+		while (n_sorted < n_scene_objects) {
+			int object;
+
+			if (head < tail) {
+				object = this.queue[head++];
+			} else {
+				/* Cycle: in_degree is negative for the objects already sorted. */
+				while (this.in_degree[next_candidate] <= 0)
+					next_candidate++;
+				object = next_candidate;
+			}
+
+			this.in_degree[object] = -1;
+			order[n_sorted++] = object;
+			for (int edge = this.first_edge[object]; edge != -1; edge = this.edge_next[edge]) {
+				int to = this.edge_to[edge];
+				if (this.in_degree[to] > 0 && --this.in_degree[to] == 0)
+					this.queue[tail++] = to;
+			}
+		}
+	}
+}
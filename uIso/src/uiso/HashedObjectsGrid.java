@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+import java.util.Arrays;
+
+/**
+ * An {@link ObjectsGrid} whose cells are stored in a hash table (open addressing with linear probing), so only the cells that have had objects use memory. It is
+ * intended for huge maps whose objects are concentrated in a few areas.
+ * 
+ * @author luis
+ */
+class HashedObjectsGrid extends ObjectsGrid {
+	/* Package: */
+	HashedObjectsGrid(ObjectsGridManager objects_grid_manager, int min_x, int min_y, int max_x, int max_y, int cell_size) {
+		super(objects_grid_manager, min_x, min_y, max_x, max_y, cell_size);
+		this.allocateTable(INITIAL_CAPACITY);
+	}
+
+	@Override
+	UIsoObjectsGridCell getCell(int key, boolean create) {
+		int mask = this.keys.length - 1, i = hash(key) & mask;
+
+		while (this.keys[i] != -1) {
+			if (this.keys[i] == key)
+				return this.cells[i];
+			i = (i + 1) & mask;
+		}
+		if (!create)
+			return null;
+
+		/* The load factor is kept below 1/2. */
+		if ((this.n_cells + 1) << 1 > this.keys.length) {
+			this.rehash();
+			return this.getCell(key, true);
+		}
+
+		UIsoObjectsGridCell cell = new UIsoObjectsGridCell();
+		this.keys[i] = key;
+		this.cells[i] = cell;
+		this.n_cells++;
+		return cell;
+	}
+
+	@Override
+	int getNumberOfCells() {
+		return this.n_cells;
+	}
+
+	/* Private: */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/* The keys are never negative, so -1 means an empty position. */
+	private int[] keys;
+	private UIsoObjectsGridCell[] cells;
+	private int n_cells;
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void allocateTable(int capacity) {
+		this.keys = new int[capacity];
+		this.cells = new UIsoObjectsGridCell[capacity];
+		Arrays.fill(this.keys, -1);
+	}
+
+	private void rehash() {
+		int[] keys = this.keys;
+		UIsoObjectsGridCell[] cells = this.cells;
+
+		this.allocateTable(keys.length << 1);
+		int mask = this.keys.length - 1;
+		for (int j = 0; j < keys.length; j++) {
+			if (keys[j] == -1)
+				continue;
+
+			int i = hash(keys[j]) & mask;
+			while (this.keys[i] != -1)
+				i = (i + 1) & mask;
+			this.keys[i] = keys[j];
+			this.cells[i] = cells[j];
+		}
+	}
+}
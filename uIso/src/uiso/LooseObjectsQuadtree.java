@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+import java.util.Arrays;
+
+/**
+ * A loose quadtree over the simulation visible area. Each object is stored in only one node: the smallest one that contains its center and whose size is not smaller
+ * than the object. The area that can be covered by the objects of a node (its loose bounds) is the node expanded by half of its size in every direction. There is no
+ * limit for the object sizes and the nodes are created when an object is inserted in them. Objects whose center is outside the tree are kept in the root.
+ * 
+ * @author luis
+ */
+class LooseObjectsQuadtree extends ObjectsSpatialIndex {
+	/* Package: */
+	LooseObjectsQuadtree(ObjectsGridManager objects_grid_manager, int min_x, int min_y, int max_x, int max_y, int min_node_size) {
+		super(objects_grid_manager);
+
+		int size = min_node_size;
+		while (size < max_x - min_x + 1 || size < max_y - min_y + 1)
+			size <<= 1;
+
+		this.root = new Node(min_x, min_y, size);
+		this.n_nodes = 1;
+		this.min_node_size = min_node_size;
+		this.slot_nodes = new Node[INITIAL_SLOTS];
+		this.slot_positions = new int[INITIAL_SLOTS];
+		this.stack = new Node[64];
+	}
+
+	@Override
+	void insertObject(int slot, int min_x, int min_y, int max_x, int max_y) {
+		int center_x = (min_x + max_x) >> 1, center_y = (min_y + max_y) >> 1, size = Math.max(max_x - min_x, max_y - min_y);
+		Node node = this.root;
+
+		if (slot >= this.slot_nodes.length) {
+			int capacity = Math.max(slot + 1, this.slot_nodes.length << 1);
+			this.slot_nodes = Arrays.copyOf(this.slot_nodes, capacity);
+			this.slot_positions = Arrays.copyOf(this.slot_positions, capacity);
+		}
+
+		if (node.x <= center_x && center_x < node.x + node.size && node.y <= center_y && center_y < node.y + node.size) {
+			/* Goes down while the object fits in the loose bounds of a child. */
+			while (node.size > this.min_node_size && size <= (node.size >> 1)) {
+				int half = node.size >> 1, child = (center_x >= node.x + half ? 1 : 0) | (center_y >= node.y + half ? 2 : 0);
+
+				if (node.children == null)
+					node.children = new Node[4];
+				if (node.children[child] == null) {
+					node.children[child] = new Node(node.x + ((child & 1) != 0 ? half : 0), node.y + ((child & 2) != 0 ? half : 0), half);
+					this.n_nodes++;
+				}
+				node = node.children[child];
+			}
+		}
+
+		/* Most motions do not change the node. */
+		if (this.slot_nodes[slot] == node)
+			return;
+		this.removeObject(slot);
+		this.slot_nodes[slot] = node;
+		this.slot_positions[slot] = node.addEntry(slot);
+	}
+
+	@Override
+	void removeObject(int slot) {
+		if (slot >= this.slot_nodes.length || this.slot_nodes[slot] == null)
+			return;
+
+		Node node = this.slot_nodes[slot];
+		int position = this.slot_positions[slot];
+		int moved_slot = node.removeEntry(position);
+		if (moved_slot >= 0)
+			this.slot_positions[moved_slot] = position;
+		this.slot_nodes[slot] = null;
+	}
+
+	@Override
+	void findObjects(int min_x, int min_y, int max_x, int max_y) {
+		int n = 0;
+
+		this.stack[n++] = this.root;
+		while (n > 0) {
+			Node node = this.stack[--n];
+			this.stack[n] = null;
+
+			int[] entries = node.entries;
+			for (int i = 0, n_entries = node.n_entries; i < n_entries; i++)
+				this.objects_grid_manager.addFoundSlot(entries[i]);
+
+			if (node.children == null)
+				continue;
+			for (int i = 0; i < 4; i++) {
+				Node child = node.children[i];
+				if (child == null)
+					continue;
+
+				int loose = child.size >> 1;
+				if (child.x - loose <= max_x && min_x < child.x + child.size + loose && child.y - loose <= max_y && min_y < child.y + child.size + loose) {
+					if (n == this.stack.length)
+						this.stack = Arrays.copyOf(this.stack, n << 1);
+					this.stack[n++] = child;
+				}
+			}
+		}
+	}
+
+	@Override
+	int getNumberOfCells() {
+		return this.n_nodes;
+	}
+
+	/* Private: */
+	private static final int INITIAL_SLOTS = 256;
+
+	private static class Node extends UIsoObjectsGridCell {
+		Node(int x, int y, int size) {
+			this.x = x;
+			this.y = y;
+			this.size = size;
+		}
+
+		int x, y, size;
+		Node[] children;
+	}
+
+	private Node root;
+	private int n_nodes, min_node_size;
+	/* The node and the position inside it of each slot. */
+	private Node[] slot_nodes;
+	private int[] slot_positions;
+	private Node[] stack; /* Used by findObjects. */
+}
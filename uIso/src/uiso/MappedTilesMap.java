@@ -0,0 +1,372 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uiso;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import uiso.exceptions.InvalidConfigurationException;
+import uiso.interfaces.ITileFactory;
+
+/**
+ * Stores the tiles data (see {@link Tile}) in a memory-mapped file divided in chunks of {@value #CHUNK_SIZE} x {@value #CHUNK_SIZE} tiles. The tiles are accessed
+ * through a pool of at most {@code max_chunk_slots} chunks (see {@link UIsoConfiguration#mapped_tiles_memory_budget}): a chunk is paged in (copied from the file
+ * mapping) when one of its tiles is accessed and the least recently used chunk is written back (if it has been changed) and evicted when a slot is needed. The chunks
+ * around the viewport center are paged in before each scene (see {@link #prepareTilesAround(int, int)}). Each row of chunks of the file is mapped once and kept, as a
+ * mapping can not be released explicitly, so the heap use depends only on the budget.
+ * <p>
+ * The file starts with a header ({@value #HEADER_SIZE} bytes: magic number, version, row length, rows, chunk size bits, w, h and tile max z) followed by the chunks
+ * in row order, each one with its tiles in row order (little-endian ints). If the file already exists with the same header, its tiles are used as they are, so
+ * opening a map costs nothing. If it does not exist, is empty or is a mapped tiles file of another map, it is (re)created and its tiles are built by the
+ * {@link ITileFactory} chunk by chunk. Any other file is left untouched. The tiles returned are views (see {@link PackedTilesMap}). The file stays open until {@link #close()}
+ * is called.
+ * 
+ * @author luis
+ */
+class MappedTilesMap extends UIsoMap {
+	/* Package: */
+	MappedTilesMap(int w, int h, int tile_max_z, int virtual_world_tile_size, int slope_height, ITileFactory tile_factory, String path, int memory_budget,
+			int preparation_radius) {
+		super(w, h, tile_max_z, virtual_world_tile_size, slope_height);
+
+		this.chunk_row_length = (this.row_length + CHUNK_SIZE - 1) >> CHUNK_SIZE_BITS;
+		this.chunk_rows = (this.rows + CHUNK_SIZE - 1) >> CHUNK_SIZE_BITS;
+		this.mapped_rows = new MappedByteBuffer[this.chunk_rows];
+		this.changed_rows = new boolean[this.chunk_rows];
+		this.chunk_slots = new int[this.chunk_row_length * this.chunk_rows];
+		for (int i = 0; i < this.chunk_slots.length; i++)
+			this.chunk_slots[i] = -1;
+		this.preparation_radius = preparation_radius;
+
+		/* The chunks around the viewport center must fit in the pool. */
+		int prepared_chunks = (((preparation_radius << 1) >> CHUNK_SIZE_BITS) + 2) * (((preparation_radius << 1) >> CHUNK_SIZE_BITS) + 2);
+		int max_chunk_slots = Math.min(Math.max(memory_budget / CHUNK_BYTES, prepared_chunks << 1), this.chunk_slots.length);
+		this.slots_data = new int[max_chunk_slots][];
+		this.slots_chunk = new int[max_chunk_slots];
+		this.slots_changed = new boolean[max_chunk_slots];
+		this.lru_next = new int[max_chunk_slots];
+		this.lru_previous = new int[max_chunk_slots];
+		this.lru_head = this.lru_tail = -1;
+		this.view = tile_factory.buildNewTile(0, 0).newView(this, 0, 0);
+
+		RandomAccessFile random_access_file = null;
+		try {
+			File file = new File(path);
+			long length = HEADER_SIZE + (long) this.chunk_slots.length * CHUNK_BYTES;
+			boolean reuse = false;
+
+			random_access_file = new RandomAccessFile(file, "rw");
+			this.channel = random_access_file.getChannel();
+			if (this.channel.size() > 0) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				if (this.channel.read(header, 0) != HEADER_SIZE || header.getInt(0) != MAGIC_NUMBER)
+					throw new InvalidConfigurationException("The file \"" + path + "\" is not a mapped tiles file.");
+				reuse = this.channel.size() == length && header.getInt(4) == VERSION && header.getInt(8) == this.row_length && header.getInt(12) == this.rows
+						&& header.getInt(16) == CHUNK_SIZE_BITS && header.getInt(20) == w && header.getInt(24) == h && header.getInt(28) == tile_max_z;
+			}
+
+			if (reuse) {
+				this.tiles_loaded = true;
+			} else {
+				random_access_file.setLength(0);
+				random_access_file.setLength(length);
+				/* Only the magic number is written before the tiles are built, so a file whose tiles have not been completely built is not reused but can be rebuilt. */
+				MappedByteBuffer header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+				header.order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(0, MAGIC_NUMBER);
+				header.force();
+				this.buildChunks(tile_factory);
+				this.flush();
+
+				header.putInt(4, VERSION).putInt(8, this.row_length).putInt(12, this.rows).putInt(16, CHUNK_SIZE_BITS).putInt(20, w).putInt(24, h).putInt(28, tile_max_z);
+				header.force();
+			}
+		} catch (IOException e) {
+			this.closeFile(random_access_file);
+			throw new InvalidConfigurationException("The mapped tiles file can not be opened: " + e.getMessage());
+		} catch (InvalidConfigurationException e) {
+			this.closeFile(random_access_file);
+			throw e;
+		}
+	}
+
+	@Override
+	Tile getTile(int x, int y) {
+		return this.view.newView(this, x, y);
+	}
+
+	@Override
+	Tile getTileView(int x, int y) {
+		this.view.moveView(x, y);
+		return this.view;
+	}
+
+	@Override
+	void storeTile(int x, int y, Tile tile) {
+		this.setTileData(x, y, tile.getData());
+	}
+
+	@Override
+	int getTileData(int x, int y) {
+		return this.slots_data[this.getSlot(this.getChunkIndex(x, y))][getTileOffset(x, y)];
+	}
+
+	@Override
+	void setTileData(int x, int y, int data) {
+		int slot = this.getSlot(this.getChunkIndex(x, y));
+		this.slots_data[slot][getTileOffset(x, y)] = data;
+		this.slots_changed[slot] = true;
+	}
+
+	/**
+	 * Copies the tiles chunk by chunk (one piece of tile row at a time), so each chunk is paged in only once.
+	 */
+	@Override
+	void readTiles(IntBuffer buffer) {
+		this.copyTiles(buffer, true);
+	}
+
+	@Override
+	void writeTiles(IntBuffer buffer) {
+		this.copyTiles(buffer, false);
+	}
+
+	/**
+	 * Pages in the chunks that have tiles at most {@code preparation_radius} tiles away from the informed tile.
+	 */
+	@Override
+	void prepareTilesAround(int x, int y) {
+		int min_chunk_x = Math.max(0, (x - this.preparation_radius) >> CHUNK_SIZE_BITS), max_chunk_x =
+				Math.min(this.chunk_row_length - 1, (x + this.preparation_radius) >> CHUNK_SIZE_BITS);
+		int min_chunk_y = Math.max(0, (y - this.preparation_radius) >> CHUNK_SIZE_BITS), max_chunk_y =
+				Math.min(this.chunk_rows - 1, (y + this.preparation_radius) >> CHUNK_SIZE_BITS);
+
+		for (int chunk_y = min_chunk_y; chunk_y <= max_chunk_y; chunk_y++)
+			for (int chunk_x = min_chunk_x; chunk_x <= max_chunk_x; chunk_x++)
+				this.getSlot(chunk_y * this.chunk_row_length + chunk_x);
+	}
+
+	/**
+	 * Writes back the changed chunks and forces the changed rows of chunks to be written to the file.
+	 */
+	@Override
+	void flush() {
+		for (int slot = this.lru_head; slot >= 0; slot = this.lru_next[slot])
+			if (this.slots_changed[slot])
+				this.writeBack(slot);
+
+		for (int chunk_y = 0; chunk_y < this.chunk_rows; chunk_y++) {
+			if (this.changed_rows[chunk_y]) {
+				this.mapped_rows[chunk_y].force();
+				this.changed_rows[chunk_y] = false;
+			}
+		}
+	}
+
+	/**
+	 * Writes back the changed chunks and closes the file. The map can not be used anymore.
+	 */
+	@Override
+	void close() {
+		if (this.channel == null)
+			return;
+		this.flush();
+		this.mapped_rows = null;
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			throw new IllegalStateException("The mapped tiles file can not be closed: " + e.getMessage());
+		} finally {
+			this.channel = null;
+		}
+	}
+
+	/* Private: */
+	private final static int MAGIC_NUMBER = 0x5549534D; /* "UISM" */
+	private final static int VERSION = 2;
+	private final static int HEADER_SIZE = 32;
+	private final static int CHUNK_SIZE_BITS = 6;
+	private final static int CHUNK_SIZE = 1 << CHUNK_SIZE_BITS;
+	private final static int CHUNK_INTS = CHUNK_SIZE * CHUNK_SIZE;
+	private final static int CHUNK_BYTES = CHUNK_INTS << 2;
+
+	private FileChannel channel;
+	private Tile view;
+	private int chunk_row_length, chunk_rows, n_chunk_slots, preparation_radius;
+	/* The rows of chunks of the file (null if the row has not been mapped yet) and whether they have been changed since they were forced. */
+	private MappedByteBuffer[] mapped_rows;
+	private boolean[] changed_rows;
+	/* The slot of each chunk (-1 if the chunk is not paged in). */
+	private int[] chunk_slots;
+	/* The data of the chunk in each slot, the chunk and whether it has been changed since it was paged in. */
+	private int[][] slots_data;
+	private int[] slots_chunk;
+	private boolean[] slots_changed;
+	/* The used slots from the most recently used (lru_head) to the least recently used (lru_tail). */
+	private int[] lru_next, lru_previous;
+	private int lru_head, lru_tail;
+
+	private void closeFile(RandomAccessFile random_access_file) {
+		if (random_access_file == null)
+			return;
+		try {
+			random_access_file.close();
+		} catch (IOException e) {
+			/* The opening error is more relevant. */
+		}
+		this.channel = null;
+	}
+
+	private int getChunkIndex(int x, int y) {
+		return (y >> CHUNK_SIZE_BITS) * this.chunk_row_length + (x >> CHUNK_SIZE_BITS);
+	}
+
+	private static int getTileOffset(int x, int y) {
+		return ((y & (CHUNK_SIZE - 1)) << CHUNK_SIZE_BITS) | (x & (CHUNK_SIZE - 1));
+	}
+
+	private int getSlot(int chunk) {
+		int slot = this.chunk_slots[chunk];
+
+		if (slot < 0)
+			return this.pageIn(chunk);
+		if (slot != this.lru_head) {
+			this.unlinkSlot(slot);
+			this.linkSlot(slot);
+		}
+		return slot;
+	}
+
+	/* Builds the tiles chunk by chunk, so each chunk is paged in only once. */
+	private void buildChunks(ITileFactory tile_factory) {
+		for (int chunk_y = 0; chunk_y < this.chunk_rows; chunk_y++) {
+			for (int chunk_x = 0; chunk_x < this.chunk_row_length; chunk_x++) {
+				int min_x = chunk_x << CHUNK_SIZE_BITS, min_y = chunk_y << CHUNK_SIZE_BITS;
+				int max_x = Math.min(min_x + CHUNK_SIZE, this.row_length), max_y = Math.min(min_y + CHUNK_SIZE, this.rows);
+
+				for (int y = min_y; y < max_y; y++)
+					for (int x = min_x; x < max_x; x++)
+						this.buildTile(x, y, tile_factory);
+			}
+		}
+	}
+
+	private void copyTiles(IntBuffer buffer, boolean read) {
+		int start = buffer.position();
+
+		for (int chunk_y = 0; chunk_y < this.chunk_rows; chunk_y++) {
+			for (int chunk_x = 0; chunk_x < this.chunk_row_length; chunk_x++) {
+				int slot = this.getSlot(chunk_y * this.chunk_row_length + chunk_x);
+				int min_x = chunk_x << CHUNK_SIZE_BITS, min_y = chunk_y << CHUNK_SIZE_BITS;
+				int length = Math.min(CHUNK_SIZE, this.row_length - min_x), max_y = Math.min(min_y + CHUNK_SIZE, this.rows);
+
+				for (int y = min_y; y < max_y; y++) {
+					buffer.position(start + y * this.row_length + min_x);
+					if (read)
+						buffer.get(this.slots_data[slot], getTileOffset(min_x, y), length);
+					else
+						buffer.put(this.slots_data[slot], getTileOffset(min_x, y), length);
+				}
+				if (read)
+					this.slots_changed[slot] = true;
+			}
+		}
+		buffer.position(start + this.rows * this.row_length);
+	}
+
+	private int pageIn(int chunk) {
+		int slot;
+
+		if (this.n_chunk_slots < this.slots_data.length) {
+			slot = this.n_chunk_slots++;
+			this.slots_data[slot] = new int[CHUNK_INTS];
+		} else {
+			/* Evict the least recently used chunk. */
+			slot = this.lru_tail;
+			if (this.slots_changed[slot])
+				this.writeBack(slot);
+			this.chunk_slots[this.slots_chunk[slot]] = -1;
+			this.unlinkSlot(slot);
+		}
+
+		IntBuffer row = this.getMappedRow(chunk / this.chunk_row_length).asIntBuffer();
+		row.position((chunk % this.chunk_row_length) * CHUNK_INTS);
+		row.get(this.slots_data[slot]);
+
+		this.chunk_slots[chunk] = slot;
+		this.slots_chunk[slot] = chunk;
+		this.linkSlot(slot);
+		return slot;
+	}
+
+	private void writeBack(int slot) {
+		int chunk = this.slots_chunk[slot], chunk_y = chunk / this.chunk_row_length;
+		IntBuffer row = this.getMappedRow(chunk_y).asIntBuffer();
+
+		row.position((chunk % this.chunk_row_length) * CHUNK_INTS);
+		row.put(this.slots_data[slot]);
+		this.slots_changed[slot] = false;
+		this.changed_rows[chunk_y] = true;
+	}
+
+	private MappedByteBuffer getMappedRow(int chunk_y) {
+		MappedByteBuffer row = this.mapped_rows[chunk_y];
+
+		if (row == null) {
+			long row_bytes = (long) this.chunk_row_length * CHUNK_BYTES;
+			try {
+				row = this.channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + chunk_y * row_bytes, row_bytes);
+				row.order(ByteOrder.LITTLE_ENDIAN);
+				this.mapped_rows[chunk_y] = row;
+			} catch (IOException e) {
+				throw new IllegalStateException("The mapped tiles file can not be mapped: " + e.getMessage());
+			}
+		}
+		return row;
+	}
+
+	private void linkSlot(int slot) {
+		this.lru_previous[slot] = -1;
+		this.lru_next[slot] = this.lru_head;
+		if (this.lru_head >= 0)
+			this.lru_previous[this.lru_head] = slot;
+		else
+			this.lru_tail = slot;
+		this.lru_head = slot;
+	}
+
+	private void unlinkSlot(int slot) {
+		int next = this.lru_next[slot], previous = this.lru_previous[slot];
+
+		if (previous >= 0)
+			this.lru_next[previous] = next;
+		else
+			this.lru_head = next;
+		if (next >= 0)
+			this.lru_previous[next] = previous;
+		else
+			this.lru_tail = previous;
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+import java.util.Arrays;
+
+/**
+ * A grid of square cells over the simulation visible area (see {@link ObjectsGridManager}). Each object is inserted in the cells that contain the corners of its area,
+ * so the queries are expanded by the size of the biggest object in the grid (big objects make every query visit more cells). The cells are created when an object is inserted in
+ * them and are identified by their keys (y * grid width + x). The subclasses decide how the cells are stored.
+ * 
+ * @author luis
+ */
+abstract class ObjectsGrid extends ObjectsSpatialIndex {
+	/* Package: */
+	ObjectsGrid(ObjectsGridManager objects_grid_manager, int min_x, int min_y, int max_x, int max_y, int cell_size) {
+		super(objects_grid_manager);
+		this.min_x = min_x;
+		this.min_y = min_y;
+		this.max_x = max_x;
+		this.max_y = max_y;
+		this.cell_size = cell_size;
+		this.w_length = (max_x - min_x + 1) / cell_size + 1;
+		this.h_length = (max_y - min_y + 1) / cell_size + 1;
+		this.slot_cells = new int[INITIAL_SLOTS << 2];
+		this.slot_entries = new int[INITIAL_SLOTS << 2];
+		this.slot_sizes = new int[INITIAL_SLOTS << 1];
+		Arrays.fill(this.slot_cells, -1);
+		Arrays.fill(this.slot_sizes, -1);
+	}
+
+	@Override
+	void insertObject(int slot, int min_x, int min_y, int max_x, int max_y) {
+		int i = slot << 2, w = max_x - min_x, h = max_y - min_y;
+		int[] cells = this.corner_cells;
+
+		if (i >= this.slot_cells.length)
+			this.allocateSlotArrays(Math.max(slot + 1, this.slot_cells.length >> 1));
+		/* Most motions do not change the size of the object either. */
+		if (this.slot_sizes[slot << 1] != w || this.slot_sizes[(slot << 1) + 1] != h) {
+			this.removeSlotSize(slot);
+			this.insertSlotSize(slot, w, h);
+		}
+
+		cells[NW_CORNER] = this.getCellKey(min_x, min_y);
+		cells[NE_CORNER] = this.getCellKey(max_x, min_y);
+		cells[ES_CORNER] = this.getCellKey(max_x, max_y);
+		cells[WS_CORNER] = this.getCellKey(min_x, max_y);
+
+		/* Only one entry per cell. */
+		for (int corner = 1; corner < 4; corner++) {
+			for (int j = 0; j < corner; j++) {
+				if (cells[corner] == cells[j])
+					cells[corner] = -1;
+			}
+		}
+
+		/* Most motions do not change the cells covered by the object. */
+		for (int corner = 0; corner < 4; corner++) {
+			if (cells[corner] != this.slot_cells[i + corner]) {
+				this.removeSlotEntry(slot, corner);
+				this.insertSlotEntry(slot, corner, cells[corner]);
+			}
+		}
+	}
+
+	@Override
+	void removeObject(int slot) {
+		if ((slot << 2) >= this.slot_cells.length)
+			return;
+		for (int corner = 0; corner < 4; corner++)
+			this.removeSlotEntry(slot, corner);
+		this.removeSlotSize(slot);
+	}
+
+	@Override
+	void findObjects(int min_x, int min_y, int max_x, int max_y) {
+		if (this.max_object_size_outdated)
+			this.updateMaxObjectSize();
+
+		/* The corners of an object that intersects the rectangle are at most one object size away from it. */
+		min_x -= this.max_object_w;
+		min_y -= this.max_object_h;
+		max_x += this.max_object_w;
+		max_y += this.max_object_h;
+
+		int min_cell_x = Math.max(0, (Math.max(min_x, this.min_x) - this.min_x) / this.cell_size);
+		int min_cell_y = Math.max(0, (Math.max(min_y, this.min_y) - this.min_y) / this.cell_size);
+		int max_cell_x = Math.min(this.w_length - 1, (Math.min(max_x, this.max_x) - this.min_x) / this.cell_size);
+		int max_cell_y = Math.min(this.h_length - 1, (Math.min(max_y, this.max_y) - this.min_y) / this.cell_size);
+
+		for (int cell_y = min_cell_y; cell_y <= max_cell_y; cell_y++) {
+			for (int cell_x = min_cell_x; cell_x <= max_cell_x; cell_x++) {
+				UIsoObjectsGridCell cell = this.getCell(cell_y * this.w_length + cell_x, false);
+				if (cell == null)
+					continue;
+
+				int[] entries = cell.entries;
+				for (int i = 0, n = cell.n_entries; i < n; i++)
+					this.objects_grid_manager.addFoundSlot(entries[i] >>> 2);
+			}
+		}
+	}
+
+	int getCellSize() {
+		return this.cell_size;
+	}
+
+	/**
+	 * @param create
+	 *           whether the cell must be created if it does not exist
+	 * @return the cell or null
+	 */
+	abstract UIsoObjectsGridCell getCell(int key, boolean create);
+
+	/* Protected: */
+	protected int w_length, h_length;
+
+	/* Private: */
+	private static final int INITIAL_SLOTS = 256;
+	private static final int NW_CORNER = 0, NE_CORNER = 1, ES_CORNER = 2, WS_CORNER = 3;
+
+	private int min_x, min_y, max_x, max_y, cell_size;
+	/* The size of the biggest object in the grid and how many objects have that size. When the last one is removed, the size is recomputed by the next query. */
+	private int max_object_w, max_object_h, n_max_w_objects, n_max_h_objects;
+	private boolean max_object_size_outdated;
+	/* Each slot uses 4 positions (one for each corner): the cell key and the position of the entry inside the cell. The key is -1 when the corner has not been inserted
+	 * (it is outside the grid or it shares the cell with another corner). */
+	private int[] slot_cells, slot_entries;
+	/* Each slot uses 2 positions: the width and the height of the object. They are -1 when the slot is not in the grid. */
+	private int[] slot_sizes;
+	private int[] corner_cells = new int[4]; /* Used by insertObject. */
+
+	/**
+	 * @return the key of the cell that contains the point (real coordinates) or -1
+	 */
+	private int getCellKey(int x, int y) {
+		if (!(this.min_x <= x && x <= this.max_x && this.min_y <= y && y <= this.max_y))
+			return -1;
+		return ((y - this.min_y) / this.cell_size) * this.w_length + (x - this.min_x) / this.cell_size;
+	}
+
+	private void allocateSlotArrays(int capacity) {
+		int old_length = this.slot_cells.length;
+
+		this.slot_cells = Arrays.copyOf(this.slot_cells, capacity << 2);
+		this.slot_entries = Arrays.copyOf(this.slot_entries, capacity << 2);
+		this.slot_sizes = Arrays.copyOf(this.slot_sizes, capacity << 1);
+		Arrays.fill(this.slot_cells, old_length, this.slot_cells.length, -1);
+		Arrays.fill(this.slot_sizes, old_length >> 1, this.slot_sizes.length, -1);
+	}
+
+	private void insertSlotSize(int slot, int w, int h) {
+		int i = slot << 1;
+
+		this.slot_sizes[i] = w;
+		this.slot_sizes[i + 1] = h;
+		this.countObjectSize(w, h);
+	}
+
+	private void removeSlotSize(int slot) {
+		int i = slot << 1, w = this.slot_sizes[i], h = this.slot_sizes[i + 1];
+
+		if (w < 0)
+			return;
+		this.slot_sizes[i] = this.slot_sizes[i + 1] = -1;
+		if (w == this.max_object_w && --this.n_max_w_objects == 0)
+			this.max_object_size_outdated = true;
+		if (h == this.max_object_h && --this.n_max_h_objects == 0)
+			this.max_object_size_outdated = true;
+	}
+
+	private void countObjectSize(int w, int h) {
+		if (w > this.max_object_w) {
+			this.max_object_w = w;
+			this.n_max_w_objects = 1;
+		} else if (w == this.max_object_w) {
+			this.n_max_w_objects++;
+		}
+		if (h > this.max_object_h) {
+			this.max_object_h = h;
+			this.n_max_h_objects = 1;
+		} else if (h == this.max_object_h) {
+			this.n_max_h_objects++;
+		}
+	}
+
+	private void updateMaxObjectSize() {
+		this.max_object_w = this.max_object_h = this.n_max_w_objects = this.n_max_h_objects = 0;
+		for (int i = 0; i < this.slot_sizes.length; i += 2) {
+			int w = this.slot_sizes[i], h = this.slot_sizes[i + 1];
+
+			if (w >= 0)
+				this.countObjectSize(w, h);
+		}
+		this.max_object_size_outdated = false;
+	}
+
+	private void insertSlotEntry(int slot, int corner, int key) {
+		int i = slot << 2;
+
+		this.slot_cells[i + corner] = key;
+		if (key >= 0)
+			this.slot_entries[i + corner] = this.getCell(key, true).addEntry((slot << 2) | corner);
+	}
+
+	private void removeSlotEntry(int slot, int corner) {
+		int i = slot << 2, key = this.slot_cells[i + corner];
+
+		if (key < 0)
+			return;
+
+		UIsoObjectsGridCell cell = this.getCell(key, false);
+		int position = this.slot_entries[i + corner];
+		int moved_entry = cell.removeEntry(position);
+		/* The moved entry must know its new position (an entry is also the index of its position in the slot arrays). */
+		if (moved_entry >= 0)
+			this.slot_entries[moved_entry] = position;
+		this.slot_cells[i + corner] = -1;
+	}
+}
@@ -19,6 +19,8 @@
 
 package uiso;
 
+import java.util.Arrays;
+
 import uiso.interfaces.IDrawer;
 
 /**
@@ -55,7 +57,7 @@ import uiso.interfaces.IDrawer;
  */
 class ObjectsGridManager {
 	/* Public: */
-	public ObjectsGridManager(UIsoEngine isometric_engine) {
+	public ObjectsGridManager(UIsoEngine isometric_engine, int spatial_index_type, int cell_size) {
 		int viewport_w_half = isometric_engine.viewport_w_half;
 		Point n_point = new Point(), s_point = new Point(), w_point = new Point(), e_point = new Point();
 
@@ -66,8 +68,11 @@ class ObjectsGridManager {
 		this.string_bounds = isometric_engine.string_bounds;
 		this.nw_point = new Point();
 		this.es_point = new Point();
-		this.objects_grid_cell_size =
-				Math.max(viewport_w_half, viewport_w_half) <= MIN_OBJECTS_GRID_CELL_SIZE ? MIN_OBJECTS_GRID_CELL_SIZE : Math.max(viewport_w_half, viewport_w_half);
+		if (cell_size > 0)
+			this.objects_grid_cell_size = cell_size;
+		else
+			this.objects_grid_cell_size =
+					Math.max(viewport_w_half, viewport_w_half) <= MIN_OBJECTS_GRID_CELL_SIZE ? MIN_OBJECTS_GRID_CELL_SIZE : Math.max(viewport_w_half, viewport_w_half);
 
 		/* Calculate the points N, S, W, E, EW and ES. */
 		{
@@ -104,20 +109,122 @@ class ObjectsGridManager {
 			this.es_point.x = e_point.x - this.isometric_engine.viewport_w_half + this.viewport_w - 1;
 		}
 
-		/* Creates the necessary cells. */
-		int h_length = (this.es_point.y - this.nw_point.y + 1) / this.objects_grid_cell_size + 1;
-		int w_length = (this.es_point.x - this.nw_point.x + 1) / this.objects_grid_cell_size + 1;
+		/* Creates the spatial index. Its cells are created when needed. */
+		switch (spatial_index_type) {
+			case UIsoConstants.HASHED_OBJECTS_GRID:
+				this.spatial_index =
+						new HashedObjectsGrid(this, this.nw_point.x, this.nw_point.y, this.es_point.x, this.es_point.y, this.objects_grid_cell_size);
+			break;
+			case UIsoConstants.LOOSE_OBJECTS_QUADTREE:
+				this.spatial_index =
+						new LooseObjectsQuadtree(this, this.nw_point.x, this.nw_point.y, this.es_point.x, this.es_point.y, this.objects_grid_cell_size);
+			break;
+			default:
+				this.spatial_index =
+						new UniformObjectsGrid(this, this.nw_point.x, this.nw_point.y, this.es_point.x, this.es_point.y, this.objects_grid_cell_size);
+			break;
+		}
+
+		this.slot_objects = new UIsoObject[INITIAL_SLOTS];
+		this.slot_marks = new int[INITIAL_SLOTS];
+		this.free_slots = new int[INITIAL_SLOTS];
+		this.found_objects = new UIsoObject[INITIAL_SLOTS];
+	}
 
-		this.grid = new UIsoObjectsGridCell[h_length][w_length];
+	/**
+	 * Inserts the area [min x, max x] x [min y, max y] (real coordinates) covered by the object in the spatial index. If the object is already in the index, its previous
+	 * area is replaced.
+	 */
+	void insertObject(UIsoObject object, int min_x, int min_y, int max_x, int max_y) {
+		this.spatial_index.insertObject(this.acquireSlot(object), min_x, min_y, max_x, max_y);
+	}
 
-		for (int y = 0; y < h_length; y++) {
-			for (int x = 0; x < this.grid[y].length; x++) {
-				this.grid[y][x] = new UIsoObjectsGridCell();
-			}
+	/**
+	 * Gives a slot to the object if it has none.
+	 * 
+	 * @return the object slot
+	 */
+	int acquireSlot(UIsoObject object) {
+		if (object.slot < 0) {
+			object.slot = this.allocateSlot();
+			this.slot_objects[object.slot] = object;
+		}
+		return object.slot;
+	}
+
+	void removeObject(UIsoObject object) {
+		int slot = object.slot;
+
+		if (slot < 0)
+			return;
+		this.spatial_index.removeObject(slot);
+		this.slot_objects[slot] = null;
+		this.free_slots[this.n_free_slots++] = slot;
+		object.slot = -1;
+	}
+
+	/**
+	 * Lists the objects whose areas can intersect the rectangle [min x, max x] x [min y, max y] (real coordinates). Each object is stored only once in
+	 * {@link #found_objects}.
+	 * 
+	 * @return the number of objects found
+	 */
+	int findObjects(int min_x, int min_y, int max_x, int max_y) {
+		Arrays.fill(this.found_objects, 0, this.n_found_objects, null);
+		this.n_found_objects = 0;
+
+		if (++this.visit_mark == 0) {
+			Arrays.fill(this.slot_marks, 0);
+			this.visit_mark = 1;
+		}
+		this.spatial_index.findObjects(min_x, min_y, max_x, max_y);
+		return this.n_found_objects;
+	}
+
+	/**
+	 * Lists all the objects in the engine (i.e, the objects that have a slot) in {@link #found_objects}.
+	 * 
+	 * @return the number of objects found
+	 */
+	int findAllObjects() {
+		Arrays.fill(this.found_objects, 0, this.n_found_objects, null);
+		this.n_found_objects = 0;
+
+		for (int slot = 0; slot < this.n_slots; slot++) {
+			if (this.slot_objects[slot] == null)
+				continue;
+			if (this.n_found_objects == this.found_objects.length)
+				this.found_objects = Arrays.copyOf(this.found_objects, this.n_found_objects << 1);
+			this.found_objects[this.n_found_objects++] = this.slot_objects[slot];
 		}
+		return this.n_found_objects;
+	}
+
+	/**
+	 * Called by the spatial index for each slot found by {@link #findObjects(int, int, int, int)}. The repetitions are discarded.
+	 */
+	void addFoundSlot(int slot) {
+		if (this.slot_marks[slot] == this.visit_mark)
+			return;
+		this.slot_marks[slot] = this.visit_mark;
+
+		if (this.n_found_objects == this.found_objects.length)
+			this.found_objects = Arrays.copyOf(this.found_objects, this.n_found_objects << 1);
+		this.found_objects[this.n_found_objects++] = this.slot_objects[slot];
+	}
+
+	/**
+	 * @return the number of cells (or quadtree nodes) created by the spatial index
+	 */
+	int getNumberOfCells() {
+		return this.spatial_index.getNumberOfCells();
 	}
 
 	public void drawObjectsGrid() {
+		/* The quadtree has no grid. */
+		if (!(this.spatial_index instanceof ObjectsGrid))
+			return;
+
 		int min_x, min_y, max_x, max_y, x, y, i, j, viewport_offset_x = this.isometric_engine.viewport_offset_x, viewport_offset_y =
 				this.isometric_engine.viewport_offset_y;
 		boolean started;
@@ -175,56 +282,6 @@ class ObjectsGridManager {
 		}
 	}
 
-	public Point getNWPoint (int x, int y){
-		if (!(this.nw_point.x <= x && x <= this.es_point.x && this.nw_point.y <= y && y <= this.es_point.y))
-			return null;
-		return this.nw_point;
-	}
-	public UIsoObjectsGridCell getObjectsGridCellAndCellCoordinates(int x, int y, Point coordinates) {
-		int cell_x, cell_y;
-		UIsoObjectsGridCell cell;
-
-		if (!(this.nw_point.x <= x && x <= this.es_point.x && this.nw_point.y <= y && y <= this.es_point.y))
-			return null;
-		cell_x = (x - this.nw_point.x) / this.objects_grid_cell_size;
-		cell_y = (y - this.nw_point.y) / this.objects_grid_cell_size;
-		//System.out.println("X cell " + x + " + " + nw_point.x + " " + cell_x);
-		//System.out.println("y cell " + y + " + " + nw_point.y + " " + cell_y);
-		cell = this.getObjectsGridCell(cell_x, cell_y);
-		if (cell != null && coordinates != null) {
-			coordinates.x = cell_x;
-			coordinates.y = cell_y;
-		}
-		return cell;
-	}
-
-	public UIsoObjectsGridCell getObjectsGridCell(int cell_x, int cell_y) {
-		if (0 <= cell_y && cell_y < this.grid.length && 0 <= cell_x && cell_x < this.grid[cell_y].length){
-			return this.grid[cell_y][cell_x];
-		}
-		return null;
-	}
-
-	public void checkObjectLimits(int w, int h) {
-		int min_grid_cells_occupied_by_viewport_w = this.viewport_w / this.objects_grid_cell_size;
-		int min_grid_cells_occupied_by_viewport_h = this.viewport_h / this.objects_grid_cell_size;
-
-		/* An object size can have at most the same length as the minimum number of cells occupied by viewport plus one. 
-		 * Otherwise, the object will not be always visible as its corners are used as anchors on the grid. */
-		min_grid_cells_occupied_by_viewport_w = Math.max(1, min_grid_cells_occupied_by_viewport_w) + 1;
-		min_grid_cells_occupied_by_viewport_h = Math.max(1, min_grid_cells_occupied_by_viewport_h) + 1;
-
-		int max_w = min_grid_cells_occupied_by_viewport_w * this.objects_grid_cell_size;
-		if (w > max_w) {
-			System.err.println("[WARN] The object width is too large. The max size is \"" + max_w + "\".");
-		}
-
-		int max_h = min_grid_cells_occupied_by_viewport_h * this.objects_grid_cell_size;
-		if (h > max_h) {
-			System.err.println("[WARN] The object height is too large. The max size is \"" + max_h + "\".");
-		}
-	}
-
 	public boolean isViewportPositionValid(int viewport_offset_x, int viewport_offset_y) {
 		if (!(this.nw_point.x <= viewport_offset_x && viewport_offset_x + this.viewport_w - 1 <= this.es_point.x)
 				|| !(this.nw_point.y <= viewport_offset_y && viewport_offset_y + this.viewport_h - 1 <= this.es_point.y)) {
@@ -233,13 +290,37 @@ class ObjectsGridManager {
 		return true;
 	}
 
+	/* Package: */
+	/* The object that owns each slot. */
+	UIsoObject[] slot_objects;
+	/* The result of findObjects. */
+	UIsoObject[] found_objects;
+
 	/* Private: */
 	private static final int MIN_OBJECTS_GRID_CELL_SIZE = 200;
+	private static final int INITIAL_SLOTS = 256;
+
+	/* The slots already found by the current findObjects have its mark. */
+	private int[] slot_marks, free_slots;
+	private int n_slots, n_free_slots, visit_mark, n_found_objects;
+	private ObjectsSpatialIndex spatial_index;
 
 	private IDrawer drawer;
 	private UIsoEngine isometric_engine;
 	private int objects_grid_cell_size, viewport_h, viewport_w;
-	private UIsoObjectsGridCell grid[][];
 	private Point es_point, nw_point;
 	private Rectangle string_bounds;
+
+	private int allocateSlot() {
+		if (this.n_free_slots > 0)
+			return this.free_slots[--this.n_free_slots];
+
+		if (this.n_slots == this.slot_objects.length) {
+			int capacity = this.n_slots << 1;
+			this.slot_objects = Arrays.copyOf(this.slot_objects, capacity);
+			this.slot_marks = Arrays.copyOf(this.slot_marks, capacity);
+			this.free_slots = Arrays.copyOf(this.free_slots, capacity);
+		}
+		return this.n_slots++;
+	}
 }
\ No newline at end of file
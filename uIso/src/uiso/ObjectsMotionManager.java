@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates batches of objects that have moved. Each object is added once (the motion pending flag of {@link UIsoObject} avoids repetitions), its area is computed (in
+ * parallel when the batch is big enough) and, after that, the objects are moved in the engine structures one by one.
+ * 
+ * @author luis
+ */
+class ObjectsMotionManager {
+	/* Package: */
+	ObjectsMotionManager(UIsoEngine isometric_engine, boolean deferred, int parallel_threshold, ForkJoinPool pool) {
+		this.isometric_engine = isometric_engine;
+		this.deferred = deferred;
+		this.parallel_threshold = parallel_threshold;
+		this.pool = pool;
+		this.objects = new UIsoObject[INITIAL_CAPACITY];
+		this.bounds = new int[INITIAL_CAPACITY << 2];
+		this.virtual_coordinates = new Point();
+		this.real_coordinates = new Point();
+		this.sprites = new Sprite[isometric_engine.sprites.length];
+		this.string_bounds = new Rectangle();
+	}
+
+	boolean isDeferred() {
+		return this.deferred;
+	}
+
+	void addObject(UIsoObject object) {
+		if (object.isMotionPending())
+			return;
+		object.setMotionPending(true);
+
+		if (this.n_objects == this.objects.length) {
+			UIsoObject[] objects = new UIsoObject[this.objects.length << 1];
+			System.arraycopy(this.objects, 0, objects, 0, this.n_objects);
+			this.objects = objects;
+			this.bounds = new int[objects.length << 2];
+		}
+		this.objects[this.n_objects++] = object;
+	}
+
+	/**
+	 * Updates the objects added since the last call.
+	 */
+	void updateObjects() {
+		int n = 0;
+
+		if (this.n_objects == 0)
+			return;
+
+		/* Objects removed from the engine after being added are not pending anymore. */
+		for (int i = 0; i < this.n_objects; i++) {
+			UIsoObject object = this.objects[i];
+			this.objects[i] = null;
+			if (object.isMotionPending()) {
+				object.setMotionPending(false);
+				this.objects[n++] = object;
+			}
+		}
+		this.n_objects = 0;
+
+		if (this.parallel_threshold > 0 && n >= this.parallel_threshold) {
+			if (this.pool == null)
+				this.pool = ObjectsMotionManager.getSharedPool();
+			this.pool.invoke(new ComputeBoundsTask(0, n));
+		} else {
+			for (int i = 0; i < n; i++)
+				this.isometric_engine.computeObjectBounds(this.objects[i], this.bounds, i << 2, this.virtual_coordinates, this.real_coordinates, this.sprites,
+						this.string_bounds);
+		}
+
+		for (int i = 0; i < n; i++) {
+			this.isometric_engine.applyObjectBounds(this.objects[i], this.bounds, i << 2);
+			this.objects[i] = null;
+		}
+	}
+
+	/* Private: */
+	private final static int INITIAL_CAPACITY = 64;
+	/* The number of objects below which a task does not split itself. */
+	private final static int TASK_SIZE = 256;
+
+	private UIsoEngine isometric_engine;
+	private boolean deferred;
+	private int parallel_threshold, n_objects;
+	private UIsoObject[] objects;
+	/* Each object uses 4 positions: x, y, w and h (see UIsoEngine.computeObjectBounds). */
+	private int[] bounds;
+	private Point virtual_coordinates, real_coordinates;
+	private Sprite[] sprites;
+	private Rectangle string_bounds;
+	private ForkJoinPool pool;
+
+	/* Used by the engines whose configuration has no pool. Its threads are daemons, so it does not need to be shut down. */
+	private static ForkJoinPool shared_pool;
+
+	private static synchronized ForkJoinPool getSharedPool() {
+		if (ObjectsMotionManager.shared_pool == null)
+			ObjectsMotionManager.shared_pool = new ForkJoinPool();
+		return ObjectsMotionManager.shared_pool;
+	}
+
+	private class ComputeBoundsTask extends RecursiveAction {
+		ComputeBoundsTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.end - this.start > TASK_SIZE) {
+				int middle = (this.start + this.end) >>> 1;
+				invokeAll(new ComputeBoundsTask(this.start, middle), new ComputeBoundsTask(middle, this.end));
+				return;
+			}
+
+			/* Each task has its own buffers. */
+			Point virtual_coordinates = new Point(), real_coordinates = new Point();
+			Sprite[] sprites = new Sprite[ObjectsMotionManager.this.sprites.length];
+			Rectangle string_bounds = new Rectangle();
+			for (int i = this.start; i < this.end; i++)
+				ObjectsMotionManager.this.isometric_engine.computeObjectBounds(ObjectsMotionManager.this.objects[i], ObjectsMotionManager.this.bounds, i << 2,
+						virtual_coordinates, real_coordinates, sprites, string_bounds);
+		}
+
+		private static final long serialVersionUID = 1L;
+		private int start, end;
+	}
+}
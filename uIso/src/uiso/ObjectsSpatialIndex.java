@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+/**
+ * Stores the areas (real coordinates) covered by the objects of the {@link ObjectsGridManager}. The objects are identified by their slots. The implementations differ on
+ * how the space is divided (see {@link UIsoConfiguration#objects_spatial_index}).
+ * 
+ * @author luis
+ */
+abstract class ObjectsSpatialIndex {
+	/* Package: */
+	ObjectsSpatialIndex(ObjectsGridManager objects_grid_manager) {
+		this.objects_grid_manager = objects_grid_manager;
+	}
+
+	/**
+	 * Inserts the area [min x, max x] x [min y, max y] covered by the object of the slot. If the slot is already in the index, its previous area is replaced.
+	 */
+	abstract void insertObject(int slot, int min_x, int min_y, int max_x, int max_y);
+
+	abstract void removeObject(int slot);
+
+	/**
+	 * Informs (see {@link ObjectsGridManager#addFoundSlot(int)}) the slots whose areas can intersect the rectangle [min x, max x] x [min y, max y]. Every slot whose
+	 * area intersects it must be informed, but other slots can also be informed and a slot can be informed more than once.
+	 */
+	abstract void findObjects(int min_x, int min_y, int max_x, int max_y);
+
+	/**
+	 * @return the number of cells (or nodes) that have been allocated
+	 */
+	abstract int getNumberOfCells();
+
+	/* Protected: */
+	protected ObjectsGridManager objects_grid_manager;
+}
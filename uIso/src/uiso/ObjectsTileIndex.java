@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+import java.util.Arrays;
+
+/**
+ * Keeps, for each tile of the map, the objects whose position is over it. The objects on a tile form a double linked list whose links are indexed by the object slot
+ * (see {@link ObjectsGridManager}), so inserting, moving and removing an object are O(1) and listing the objects on a tile costs only the number of objects on it. The
+ * list heads are grouped in chunks of 64 x 64 tiles that are created when an object enters them, so big maps with few objects use
+ * little memory.
+ * 
+ * @author luis
+ */
+class ObjectsTileIndex {
+	/* Package: */
+	ObjectsTileIndex(UIsoEngine isometric_engine, UIsoMap map) {
+		this.isometric_engine = isometric_engine;
+		this.tile_max_z = isometric_engine.tile_max_z;
+		this.rows = map.rows;
+		this.row_length = map.row_length;
+		this.chunk_row_length = (this.row_length + CHUNK_SIZE - 1) >> CHUNK_SIZE_BITS;
+		this.chunk_heads = new int[this.chunk_row_length * ((this.rows + CHUNK_SIZE - 1) >> CHUNK_SIZE_BITS)][];
+		this.allocateSlotArrays(INITIAL_SLOTS);
+	}
+
+	/**
+	 * Moves the object to the list of the tile under its current position. The object must already have a slot.
+	 */
+	void updateObject(UIsoObject object) {
+		int slot = object.slot, tile_x = this.isometric_engine.getTileX(object) + this.tile_max_z, tile_y = this.isometric_engine.getTileY(object) + this.tile_max_z;
+		int tile = (0 <= tile_x && tile_x < this.row_length && 0 <= tile_y && tile_y < this.rows) ? this.getTileKey(tile_x, tile_y) : -1;
+
+		assert (slot >= 0);
+		if (slot >= this.slot_tiles.length)
+			this.allocateSlotArrays(Math.max(slot + 1, this.slot_tiles.length << 1));
+
+		if (this.slot_tiles[slot] == tile)
+			return;
+		this.unlink(slot);
+		if (tile < 0)
+			return;
+
+		int head = this.getHead(tile);
+		this.slot_tiles[slot] = tile;
+		this.slot_previous[slot] = -1;
+		this.slot_next[slot] = head;
+		if (head >= 0)
+			this.slot_previous[head] = slot;
+		this.setHead(tile, slot);
+	}
+
+	/**
+	 * Removes the object from the index. It must be called before its slot is released.
+	 */
+	void removeObject(UIsoObject object) {
+		if (object.slot >= 0 && object.slot < this.slot_tiles.length)
+			this.unlink(object.slot);
+	}
+
+	/**
+	 * @return the slot of the first object on the tile or -1. The next ones are obtained with {@link #getNextSlot(int)}.
+	 */
+	int getFirstSlot(Tile tile) {
+		return this.getHead(this.getTileKey(tile.getX(), tile.getY()));
+	}
+
+	int getNextSlot(int slot) {
+		return this.slot_next[slot];
+	}
+
+	/* Private: */
+	private final static int INITIAL_SLOTS = 256;
+	private final static int CHUNK_SIZE_BITS = 6;
+	private final static int CHUNK_SIZE = 1 << CHUNK_SIZE_BITS;
+
+	private UIsoEngine isometric_engine;
+	private int tile_max_z, rows, row_length, chunk_row_length;
+	/* The first slot of each tile (-1 means no objects) grouped by chunk. A null chunk has no objects. */
+	private int[][] chunk_heads;
+	/* For each slot: its tile (-1 means it is not in the index) and its neighbours in the tile list. */
+	private int[] slot_tiles, slot_next, slot_previous;
+
+	private void allocateSlotArrays(int capacity) {
+		int old_capacity = this.slot_tiles == null ? 0 : this.slot_tiles.length;
+
+		this.slot_tiles = this.slot_tiles == null ? new int[capacity] : Arrays.copyOf(this.slot_tiles, capacity);
+		this.slot_next = this.slot_next == null ? new int[capacity] : Arrays.copyOf(this.slot_next, capacity);
+		this.slot_previous = this.slot_previous == null ? new int[capacity] : Arrays.copyOf(this.slot_previous, capacity);
+		Arrays.fill(this.slot_tiles, old_capacity, capacity, -1);
+	}
+
+	/* The key of a tile is its chunk index followed by its position inside the chunk. */
+	private int getTileKey(int tile_x, int tile_y) {
+		int chunk = (tile_y >> CHUNK_SIZE_BITS) * this.chunk_row_length + (tile_x >> CHUNK_SIZE_BITS);
+		return (chunk << (CHUNK_SIZE_BITS << 1)) | ((tile_y & (CHUNK_SIZE - 1)) << CHUNK_SIZE_BITS) | (tile_x & (CHUNK_SIZE - 1));
+	}
+
+	private int getHead(int tile) {
+		int[] heads = this.chunk_heads[tile >>> (CHUNK_SIZE_BITS << 1)];
+		return heads == null ? -1 : heads[tile & ((CHUNK_SIZE << CHUNK_SIZE_BITS) - 1)];
+	}
+
+	private void setHead(int tile, int slot) {
+		int chunk = tile >>> (CHUNK_SIZE_BITS << 1);
+		int[] heads = this.chunk_heads[chunk];
+
+		if (heads == null) {
+			if (slot < 0)
+				return;
+			heads = this.chunk_heads[chunk] = new int[CHUNK_SIZE << CHUNK_SIZE_BITS];
+			Arrays.fill(heads, -1);
+		}
+		heads[tile & ((CHUNK_SIZE << CHUNK_SIZE_BITS) - 1)] = slot;
+	}
+
+	private void unlink(int slot) {
+		int tile = this.slot_tiles[slot], next = this.slot_next[slot], previous = this.slot_previous[slot];
+
+		if (tile < 0)
+			return;
+		if (previous >= 0)
+			this.slot_next[previous] = next;
+		else
+			this.setHead(tile, next);
+		if (next >= 0)
+			this.slot_previous[next] = previous;
+		this.slot_tiles[slot] = -1;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uiso;
+
+import java.nio.IntBuffer;
+
+import uiso.interfaces.ITileFactory;
+
+/**
+ * Stores the data of all the tiles (see {@link Tile}) in one int array indexed by y * row length + x, so there is no object per tile and a tile uses only 4 bytes. The
+ * tiles returned are views (see {@link Tile#newView(UIsoMap, int, int)}) with the class of the tiles built by the {@link ITileFactory}: {@link #getTile(int, int)}
+ * creates a new one and {@link #getTileView(int, int)} moves a single view around. The tile coordinates come from the view position, so the map is not limited to 256 x
+ * 256 tiles. The tiles built by the factory are used only to initialize the data, so the fields of their subclasses are not kept.
+ * 
+ * @author luis
+ */
+class PackedTilesMap extends UIsoMap {
+	/* Package: */
+	PackedTilesMap(int w, int h, int tile_max_z, int virtual_world_tile_size, int slope_height, ITileFactory tile_factory) {
+		super(w, h, tile_max_z, virtual_world_tile_size, slope_height);
+		this.tiles_data = new int[this.rows * this.row_length];
+		this.view = tile_factory.buildNewTile(0, 0).newView(this, 0, 0);
+		this.buildTiles(tile_factory);
+	}
+
+	@Override
+	Tile getTile(int x, int y) {
+		return this.view.newView(this, x, y);
+	}
+
+	@Override
+	Tile getTileView(int x, int y) {
+		this.view.moveView(x, y);
+		return this.view;
+	}
+
+	@Override
+	int getTileData(int x, int y) {
+		return this.tiles_data[y * this.row_length + x];
+	}
+
+	@Override
+	void setTileData(int x, int y, int data) {
+		this.tiles_data[y * this.row_length + x] = data;
+	}
+
+	@Override
+	void storeTile(int x, int y, Tile tile) {
+		this.tiles_data[y * this.row_length + x] = tile.getData();
+	}
+
+	/**
+	 * The data of the packed tiles has no coordinates, so it is copied as it is.
+	 */
+	@Override
+	void readTiles(IntBuffer buffer) {
+		buffer.get(this.tiles_data);
+	}
+
+	@Override
+	void writeTiles(IntBuffer buffer) {
+		buffer.put(this.tiles_data);
+	}
+
+	/* Private: */
+	private int[] tiles_data;
+	private Tile view;
+}
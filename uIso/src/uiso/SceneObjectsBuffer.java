@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+import java.util.Arrays;
+
+/**
+ * The objects of a scene stored as parallel arrays (one entry per object). The entries are kept in the order in which the objects were inserted and {@link #order}
+ * holds their indexes sorted by depth, so sorting only permutes an int array. The arrays double their size when they are full and are reused by the next scenes.
+ * 
+ * @author luis
+ */
+class SceneObjectsBuffer {
+	/* Package: */
+	int n_objects, high_water_mark;
+	/* Area (viewport coordinates) covered by the image or string of each object. */
+	int[] x, y, w, h;
+	long[] sort_key;
+	UIsoImage[] images; /* Not used by string objects. */
+	UIsoObject[] objects;
+	/* Indexes of the objects sorted by depth. */
+	int[] order;
+	/* Scratch arrays for the sorting algorithms. */
+	int[] order_buffer, slots;
+	/* Objects of the last scene sorted by depth (see UIsoConfiguration.use_scene_order_reuse). */
+	UIsoObject[] previous_objects;
+	int n_previous_objects;
+
+	SceneObjectsBuffer(int capacity) {
+		this.allocate(Math.max(1, capacity));
+	}
+
+	void clear() {
+		this.n_objects = 0;
+	}
+
+	/**
+	 * Returns the index of the new entry. Its order is initialized with its index.
+	 */
+	int add(UIsoObject object, int x, int y, int w, int h) {
+		int i = this.n_objects;
+
+		if (i == this.objects.length)
+			this.allocate(i << 1);
+
+		this.objects[i] = object;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.w[i] = w;
+		this.h[i] = h;
+		this.order[i] = i;
+		this.n_objects++;
+		if (this.n_objects > this.high_water_mark)
+			this.high_water_mark = this.n_objects;
+		return i;
+	}
+
+	int capacity() {
+		return this.objects.length;
+	}
+
+	/* Private: */
+	private void allocate(int capacity) {
+		if (this.objects == null) {
+			this.x = new int[capacity];
+			this.y = new int[capacity];
+			this.w = new int[capacity];
+			this.h = new int[capacity];
+			this.sort_key = new long[capacity];
+			this.images = new UIsoImage[capacity];
+			this.objects = new UIsoObject[capacity];
+			this.order = new int[capacity];
+			this.order_buffer = new int[capacity];
+			this.slots = new int[capacity];
+			this.previous_objects = new UIsoObject[capacity];
+		} else {
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+			this.w = Arrays.copyOf(this.w, capacity);
+			this.h = Arrays.copyOf(this.h, capacity);
+			this.sort_key = Arrays.copyOf(this.sort_key, capacity);
+			this.images = Arrays.copyOf(this.images, capacity);
+			this.objects = Arrays.copyOf(this.objects, capacity);
+			this.order = Arrays.copyOf(this.order, capacity);
+			this.order_buffer = new int[capacity];
+			this.slots = new int[capacity];
+			this.previous_objects = Arrays.copyOf(this.previous_objects, capacity);
+		}
+		Arrays.fill(this.slots, -1);
+	}
+}
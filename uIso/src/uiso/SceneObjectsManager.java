@@ -19,15 +19,17 @@
 
 package uiso;
 
+import java.util.Arrays;
+
 import uiso.interfaces.IDrawer;
 import uiso.interfaces.IUIsoObjectComparator;
+import uiso.interfaces.IUIsoObjectSortKey;
 
 class SceneObjectsManager {
 	/* Package: */
 	SceneObjectsManager(UIsoEngine isometric_engine, int max_sprite_objects_in_the_scene, int max_string_objects_in_the_scene,
-			IUIsoObjectComparator sprite_object_comparator, IUIsoObjectComparator string_object_comparator) {
-		int i;
-
+			IUIsoObjectComparator sprite_object_comparator, IUIsoObjectComparator string_object_comparator, IUIsoObjectSortKey sprite_object_sort_key,
+			IUIsoObjectSortKey string_object_sort_key, boolean use_scene_order_reuse, boolean use_depth_sorter) {
 		this.isometric_engine = isometric_engine;
 		this.debug = isometric_engine.debug;
 		this.virtual_coordinates = isometric_engine.virtual_coordinates;
@@ -41,182 +43,325 @@ class SceneObjectsManager {
 		this.viewport_h = isometric_engine.viewport_h;
 		this.sprite_object_comparator = sprite_object_comparator;
 		this.string_object_comparator = string_object_comparator;
+		/* The depth sorter does not use the sort keys, so they are not computed. */
+		this.sprite_object_sort_key = use_depth_sorter ? null : sprite_object_sort_key;
+		this.string_object_sort_key = string_object_sort_key;
+		this.use_scene_order_reuse = use_scene_order_reuse;
 
-		this.sprite_scene_objects = new SpriteSceneObject[max_sprite_objects_in_the_scene];
-		for (i = 0; i < this.sprite_scene_objects.length; i++) {
-			this.sprite_scene_objects[i] = new SpriteSceneObject();
-		}
-		this.string_scene_objects = new StringSceneObject[max_string_objects_in_the_scene];
-		for (i = 0; i < this.string_scene_objects.length; i++) {
-			this.string_scene_objects[i] = new StringSceneObject();
-		}
+		/* The buffers grow when they are full, so the informed sizes are only the initial capacities. */
+		this.sprite_scene_objects = new SceneObjectsBuffer(max_sprite_objects_in_the_scene);
+		this.string_scene_objects = new SceneObjectsBuffer(max_string_objects_in_the_scene);
+		if (use_depth_sorter)
+			this.depth_sorter = new DepthSorter(isometric_engine, this.sprite_scene_objects.capacity());
+		this.radix_sort_count = new int[1 << RADIX_SORT_DIGIT_BITS];
 	}
 
 	void startScene() {
-		this.n_sprite_scene_objects = this.n_string_scene_objects = 0;
+		this.sprite_scene_objects.clear();
+		this.string_scene_objects.clear();
 		this.viewport_offset_x = this.isometric_engine.viewport_offset_x;
 		this.viewport_offset_y = this.isometric_engine.viewport_offset_y;
 	}
 
 	void insertObjectInScene(UIsoObject object) {
-		if (!object.isSelected() && object.isVisible()) {
+		if (object.isVisible()) {
+			int x, y, i;
+
 			this.virtual_coordinates.x = object.getX() + this.tile_max_z * this.virtual_world_tile_size;
 			this.virtual_coordinates.y = object.getY() + this.tile_max_z * this.virtual_world_tile_size;
 			this.virtual_coordinates.z = object.getZ();
 
 			UIsoEngine.toRealCoordinates(this.virtual_coordinates, this.real_coordinates);
-			this.real_coordinates.x -= this.viewport_offset_x;
-			this.real_coordinates.y -= this.viewport_offset_y;
+			x = this.real_coordinates.x - this.viewport_offset_x;
+			y = this.real_coordinates.y - this.viewport_offset_y;
 
 			if (object instanceof SpriteObject) {
 				Sprite sprite;
 				UIsoImage image;
 
-				this.drawer.getObjectSprite((SpriteObject) object, this.sprites);
-				sprite = this.sprites[0];
+				sprite = this.isometric_engine.getObjectSprite((SpriteObject) object, this.sprites);
 				if (sprite == null)
 					return;
 				image = sprite.image;
 
-				this.real_coordinates.x -= sprite.getAnchorX();
-				this.real_coordinates.y -= sprite.getAnchorY();
+				x -= sprite.anchor_x;
+				y -= sprite.anchor_y;
 
 				/* Check the rectangles intersection. */
-				if (this.real_coordinates.y + image.getH() < 0 || this.real_coordinates.y >= this.viewport_h || this.real_coordinates.x + image.getW() < 0
-						|| this.real_coordinates.x >= this.viewport_w)
+				if (y + image.getH() < 0 || y >= this.viewport_h || x + image.getW() < 0 || x >= this.viewport_w)
 					return;
 
-				if (this.n_sprite_scene_objects < this.sprite_scene_objects.length) {
-					object.setSelected(true);
-					this.sprite_scene_objects[this.n_sprite_scene_objects].image = image;
-					this.sprite_scene_objects[this.n_sprite_scene_objects].sprite_object = (SpriteObject) object;
-					this.sprite_scene_objects[this.n_sprite_scene_objects].real_coordinates.copyFrom(this.real_coordinates);
-					this.n_sprite_scene_objects++;
-
-				} else if (this.debug) {
-					System.err.println("[WARN] There was no sufficient space to draw this object in the scene. " + "Try to increase \"max_sprite_objects_in_the_scene\".");
-				}
+				i = this.sprite_scene_objects.add(object, x, y, image.getW(), image.getH());
+				this.sprite_scene_objects.images[i] = image;
+				if (this.sprite_object_sort_key != null)
+					this.sprite_scene_objects.sort_key[i] = this.sprite_object_sort_key.getSortKey(this.isometric_engine, object);
 			} else if (object instanceof StringObject) {
 				StringObject stringObject = (StringObject) object;
-				this.drawer.getStringBounds(stringObject.getString(), this.string_bounds, stringObject.getFont());
-				this.real_coordinates.x -= (this.string_bounds.w >> 1);
-				this.real_coordinates.y -= (this.string_bounds.h >> 1);
+				this.isometric_engine.getStringObjectBounds(stringObject, this.string_bounds);
+				x -= (this.string_bounds.w >> 1);
+				y -= (this.string_bounds.h >> 1);
 
 				/* Check the rectangles intersection. */
-				if (this.real_coordinates.y + this.string_bounds.h < 0 || this.real_coordinates.y >= this.viewport_h || this.real_coordinates.x + this.string_bounds.w < 0
-						|| this.real_coordinates.x >= this.viewport_w)
+				if (y + this.string_bounds.h < 0 || y >= this.viewport_h || x + this.string_bounds.w < 0 || x >= this.viewport_w)
 					return;
 
-				if (this.n_string_scene_objects < this.string_scene_objects.length) {
-					object.setSelected(true);
-					this.string_scene_objects[this.n_string_scene_objects].string_object = (StringObject) object;
-					this.string_scene_objects[this.n_string_scene_objects].real_coordinates.copyFrom(this.real_coordinates);
-					this.n_string_scene_objects++;
-				} else if (this.debug) {
-					System.err.println("[WARN] There was no sufficient space to draw this object in the scene. " + "Try to increase \"max_string_objects_in_the_scene\".");
-				}
+				i = this.string_scene_objects.add(object, x, y, this.string_bounds.w, this.string_bounds.h);
+				if (this.string_object_sort_key != null)
+					this.string_scene_objects.sort_key[i] = this.string_object_sort_key.getSortKey(this.isometric_engine, object);
 			}
 		}
 	}
 
-	void drawSceneObjects() {
-		int i;
-		SpriteSceneObject sprite_scene_object;
-		StringSceneObject string_scene_object;
+	/**
+	 * Sorts the objects inserted in the scene. After that, no more objects can be inserted and the scene can be drawn (entirely or partially) as many times as needed.
+	 */
+	void sortSceneObjects() {
+		if (this.depth_sorter != null)
+			this.depth_sorter.sort(this.sprite_scene_objects);
+		else
+			this.sortSceneObjectsBuffer(this.sprite_scene_objects, this.sprite_object_comparator, this.sprite_object_sort_key);
+		this.sortSceneObjectsBuffer(this.string_scene_objects, this.string_object_comparator, this.string_object_sort_key);
+		this.saveDrawingPositions(this.sprite_scene_objects);
+		this.saveDrawingPositions(this.string_scene_objects);
+	}
+
+	/**
+	 * Returns the position of the object in the drawing order of the last scene (the string objects are drawn after the sprite objects) or -1 if it was not drawn.
+	 */
+	int getDrawingPosition(UIsoObject object) {
+		SceneObjectsBuffer scene_objects = object instanceof SpriteObject ? this.sprite_scene_objects : this.string_scene_objects;
+		int k = object.scene_index;
+
+		if (k < 0 || k >= scene_objects.n_objects || scene_objects.objects[scene_objects.order[k]] != object)
+			return -1;
+		return scene_objects == this.sprite_scene_objects ? k : this.sprite_scene_objects.n_objects + k;
+	}
+
+	/**
+	 * Returns the maximum number of sprite objects that a scene has had.
+	 */
+	int getSpriteSceneObjectsHighWaterMark() {
+		return this.sprite_scene_objects.high_water_mark;
+	}
+
+	/**
+	 * Returns the maximum number of string objects that a scene has had.
+	 */
+	int getStringSceneObjectsHighWaterMark() {
+		return this.string_scene_objects.high_water_mark;
+	}
+
+	/**
+	 * Draws the objects of the scene that intersect the informed rectangle (viewport coordinates). The clip must have been set by the caller.
+	 */
+	void drawSceneObjects(int x, int y, int w, int h) {
+		SceneObjectsBuffer scene_objects = this.sprite_scene_objects;
+		int[] order = scene_objects.order, objects_x = scene_objects.x, objects_y = scene_objects.y, objects_w = scene_objects.w, objects_h = scene_objects.h;
+		UIsoImage[] images = scene_objects.images;
+		int max_x = x + w, max_y = y + h;
+
+		for (int k = 0; k < scene_objects.n_objects; k++) {
+			int i = order[k], object_x = objects_x[i], object_y = objects_y[i];
+
+			if (object_x >= max_x || object_x + objects_w[i] <= x || object_y >= max_y || object_y + objects_h[i] <= y)
+				continue;
 
-		this.sortSpriteSceneObjects();
-		for (i = 0; i < this.n_sprite_scene_objects; i++) {
-			sprite_scene_object = this.sprite_scene_objects[i];
-			sprite_scene_object.sprite_object.setSelected(false);
-			this.drawer.drawImage(sprite_scene_object.real_coordinates.x, sprite_scene_object.real_coordinates.y, sprite_scene_object.image);
+			this.drawer.drawImage(object_x, object_y, images[i]);
 			if (this.debug) {
-				this.virtual_coordinates.x = sprite_scene_object.sprite_object.getX() + this.tile_max_z * this.virtual_world_tile_size;
-				this.virtual_coordinates.y = sprite_scene_object.sprite_object.getY() + this.tile_max_z * this.virtual_world_tile_size;
-				this.virtual_coordinates.z = sprite_scene_object.sprite_object.getZ();
+				UIsoObject object = scene_objects.objects[i];
+				this.virtual_coordinates.x = object.getX() + this.tile_max_z * this.virtual_world_tile_size;
+				this.virtual_coordinates.y = object.getY() + this.tile_max_z * this.virtual_world_tile_size;
+				this.virtual_coordinates.z = object.getZ();
 				UIsoEngine.toRealCoordinates(this.virtual_coordinates, this.real_coordinates);
-				this.drawer.drawString(this.real_coordinates.x - this.viewport_offset_x, this.real_coordinates.y - this.viewport_offset_y, Integer.toString(i));
+				this.drawer.drawString(this.real_coordinates.x - this.viewport_offset_x, this.real_coordinates.y - this.viewport_offset_y, Integer.toString(k));
 			}
 		}
 
-		this.sortStringSceneObjects();
-		for (i = 0; i < this.n_string_scene_objects; i++) {
-			string_scene_object = this.string_scene_objects[i];
-			string_scene_object.string_object.setSelected(false);
-			this.drawer.drawString(string_scene_object.real_coordinates.x, string_scene_object.real_coordinates.y, string_scene_object.string_object.getString(),
-					string_scene_object.string_object.getFont(), string_scene_object.string_object.getColor());
+		scene_objects = this.string_scene_objects;
+		for (int k = 0; k < scene_objects.n_objects; k++) {
+			int i = scene_objects.order[k];
+			StringObject string_object = (StringObject) scene_objects.objects[i];
+
+			if (scene_objects.x[i] >= max_x || scene_objects.x[i] + scene_objects.w[i] <= x || scene_objects.y[i] >= max_y || scene_objects.y[i] + scene_objects.h[i] <= y)
+				continue;
+
+			this.drawer.drawString(scene_objects.x[i], scene_objects.y[i], string_object.getString(), string_object.getFont(), string_object.getColor());
 			if (this.debug)
-				this.drawStringSceneObjectBounds(string_scene_object);
+				this.drawStringSceneObjectBounds(scene_objects.x[i], scene_objects.y[i], scene_objects.w[i], scene_objects.h[i]);
 		}
-
 	}
 
 	/* Private: */
-	private boolean debug;
-	private int n_sprite_scene_objects, n_string_scene_objects, virtual_world_tile_size, tile_max_z, viewport_offset_x, viewport_offset_y, viewport_w, viewport_h;
+	private boolean debug, use_scene_order_reuse;
+	private DepthSorter depth_sorter;
+	private int virtual_world_tile_size, tile_max_z, viewport_offset_x, viewport_offset_y, viewport_w, viewport_h;
 	private IDrawer drawer;
 	private UIsoEngine isometric_engine;
-	private StringSceneObject[] string_scene_objects;
-	private SpriteSceneObject[] sprite_scene_objects;
+	private SceneObjectsBuffer sprite_scene_objects, string_scene_objects;
 	private Sprite[] sprites;
 	private Point virtual_coordinates, real_coordinates;
 	private Rectangle string_bounds;
 	private IUIsoObjectComparator sprite_object_comparator, string_object_comparator;
+	private IUIsoObjectSortKey sprite_object_sort_key, string_object_sort_key;
+	private int[] radix_sort_count;
 
-	private void drawStringSceneObjectBounds(StringSceneObject string_scene_object) {
-		Point real_coordinates = string_scene_object.real_coordinates;
+	private final static int RADIX_SORT_DIGIT_BITS = 8;
 
-		this.drawer.getStringBounds(string_scene_object.string_object.getString(), this.string_bounds, string_scene_object.string_object.getFont());
-		this.drawer.drawLine(real_coordinates.x, real_coordinates.y, real_coordinates.x, real_coordinates.y + this.string_bounds.h);
-		this.drawer.drawLine(real_coordinates.x, real_coordinates.y, real_coordinates.x + this.string_bounds.w, real_coordinates.y);
-		this.drawer.drawLine(real_coordinates.x + this.string_bounds.w, real_coordinates.y + this.string_bounds.h, real_coordinates.x, real_coordinates.y
-				+ this.string_bounds.h);
-		this.drawer.drawLine(real_coordinates.x + this.string_bounds.w, real_coordinates.y + this.string_bounds.h, real_coordinates.x + this.string_bounds.w,
-				real_coordinates.y);
+	private void drawStringSceneObjectBounds(int x, int y, int w, int h) {
+		this.drawer.drawLine(x, y, x, y + h);
+		this.drawer.drawLine(x, y, x + w, y);
+		this.drawer.drawLine(x + w, y + h, x, y + h);
+		this.drawer.drawLine(x + w, y + h, x + w, y);
 	}
 
-	private void sortSpriteSceneObjects() {
-		this.sortSceneObjectsArray(this.sprite_scene_objects, this.n_sprite_scene_objects, true);
+	private void sortSceneObjectsBuffer(SceneObjectsBuffer scene_objects, IUIsoObjectComparator comparator, IUIsoObjectSortKey sort_key) {
+		if (this.use_scene_order_reuse) {
+			if (this.reuseSceneOrder(scene_objects))
+				this.insertionSort(scene_objects, comparator, sort_key);
+			else if (sort_key != null)
+				this.radixSort(scene_objects);
+			else
+				this.selectionSort(scene_objects, comparator);
+			this.saveSceneOrder(scene_objects);
+		} else if (sort_key != null) {
+			this.radixSort(scene_objects);
+		} else {
+			this.selectionSort(scene_objects, comparator);
+		}
 	}
 
-	private void sortStringSceneObjects() {
-		this.sortSceneObjectsArray(this.string_scene_objects, this.n_string_scene_objects, false);
+	/**
+	 * Puts the objects that were in the last scene in their previous order followed by the new ones. Returns {@code false} if most of the objects are new, so it is
+	 * better to sort them from scratch.
+	 */
+	private boolean reuseSceneOrder(SceneObjectsBuffer scene_objects) {
+		int[] slots = scene_objects.slots, order = scene_objects.order, new_objects = scene_objects.order_buffer;
+		UIsoObject[] previous_objects = scene_objects.previous_objects;
+		int i, j, n_new_objects = 0, n_previous_objects = scene_objects.n_previous_objects;
+
+		for (i = 0; i < scene_objects.n_objects; i++) {
+			UIsoObject object = scene_objects.objects[i];
+			int scene_index = object.scene_index;
+
+			if (scene_index < n_previous_objects && previous_objects[scene_index] == object)
+				slots[scene_index] = i;
+			else
+				new_objects[n_new_objects++] = i;
+		}
+
+		for (i = j = 0; i < n_previous_objects; i++) {
+			if (slots[i] != -1) {
+				order[j++] = slots[i];
+				slots[i] = -1;
+			}
+		}
+		System.arraycopy(new_objects, 0, order, j, n_new_objects);
+
+		return n_new_objects <= (scene_objects.n_objects >> 1);
 	}
 
-	/*
-	 * Insertion sort implementation methods:
+	private void saveSceneOrder(SceneObjectsBuffer scene_objects) {
+		for (int k = 0; k < scene_objects.n_objects; k++)
+			scene_objects.previous_objects[k] = scene_objects.objects[scene_objects.order[k]];
+		scene_objects.n_previous_objects = scene_objects.n_objects;
+	}
+
+	/* The scene index of each object is its drawing position (see getDrawingPosition and reuseSceneOrder). */
+	private void saveDrawingPositions(SceneObjectsBuffer scene_objects) {
+		for (int k = 0; k < scene_objects.n_objects; k++)
+			scene_objects.objects[scene_objects.order[k]].scene_index = k;
+	}
+
+	/**
+	 * Insertion sort: it is linear when the objects are almost sorted, which is the case when the order of the last scene is reused.
 	 */
-	private void swap(SceneObject[] array, int a, int b) {
-		SceneObject aux = array[a];
-		array[a] = array[b];
-		array[b] = aux;
-	}
-
-	private void sortSceneObjectsArray(SceneObject[] array, int n_sprite_scene_objects, boolean sprite_scene_object) {
-		for (int i = 0; i < n_sprite_scene_objects; i++) {
-			int smallest = i;
-			for (int j = i + 1; j < n_sprite_scene_objects; j++) {
-				if (sprite_scene_object) {
-					UIsoObject a = ((SpriteSceneObject) array[smallest]).sprite_object;
-					UIsoObject b = ((SpriteSceneObject) array[j]).sprite_object;
-
-					if (this.sprite_object_comparator.doesBMustBeDrawnBeforeA(this.isometric_engine, a, b)) {
-						smallest = j;
-					}
-
-				} else {
-					UIsoObject a = ((StringSceneObject) array[smallest]).string_object;
-					UIsoObject b = ((StringSceneObject) array[j]).string_object;
-
-					if (this.string_object_comparator.doesBMustBeDrawnBeforeA(this.isometric_engine, a, b)) {
-						smallest = j;
-					}
+	private void insertionSort(SceneObjectsBuffer scene_objects, IUIsoObjectComparator comparator, IUIsoObjectSortKey sort_key) {
+		int[] order = scene_objects.order;
+		long[] keys = scene_objects.sort_key;
+		UIsoObject[] objects = scene_objects.objects;
+
+		for (int k = 1; k < scene_objects.n_objects; k++) {
+			int i = order[k], j = k;
+
+			if (sort_key != null) {
+				while (j > 0 && keys[order[j - 1]] > keys[i]) {
+					order[j] = order[j - 1];
+					j--;
+				}
+			} else {
+				while (j > 0 && comparator.doesBMustBeDrawnBeforeA(this.isometric_engine, objects[order[j - 1]], objects[i])) {
+					order[j] = order[j - 1];
+					j--;
 				}
 			}
-			this.swap(array, i, smallest);
+			order[j] = i;
 		}
 	}
 
+	/**
+	 * Stable LSD radix sort using the objects sort keys. The passes whose digit is the same for all the keys are skipped, so only the bytes that really vary are
+	 * considered.
+	 */
+	private void radixSort(SceneObjectsBuffer scene_objects) {
+		int[] source = scene_objects.order, destination = scene_objects.order_buffer, aux, count = this.radix_sort_count;
+		long[] keys = scene_objects.sort_key;
+		int mask = count.length - 1, n_objects = scene_objects.n_objects;
+
+		if (n_objects < 2)
+			return;
+
+		for (int shift = 0; shift < 64; shift += RADIX_SORT_DIGIT_BITS) {
+			int i, sum = 0;
+
+			Arrays.fill(count, 0);
+			for (i = 0; i < n_objects; i++)
+				count[radixSortDigit(keys[source[i]], shift, mask)]++;
+			if (count[radixSortDigit(keys[source[0]], shift, mask)] == n_objects)
+				continue;
+
+			for (i = 0; i <= mask; i++) {
+				int c = count[i];
+				count[i] = sum;
+				sum += c;
+			}
+			for (i = 0; i < n_objects; i++) {
+				int object = source[i];
+				destination[count[radixSortDigit(keys[object], shift, mask)]++] = object;
+			}
+
+			aux = source;
+			source = destination;
+			destination = aux;
+		}
+
+		/* The sorted indexes must end up in the order array. */
+		if (source != scene_objects.order) {
+			scene_objects.order_buffer = scene_objects.order;
+			scene_objects.order = source;
+		}
+	}
+
+	/* The sign bit is flipped so the negative keys come first. */
+	private static int radixSortDigit(long key, int shift, int mask) {
+		return (int) ((key ^ Long.MIN_VALUE) >>> shift) & mask;
+	}
+
 	/*
-	 * End of insertion sort implementation methods.
+	 * Selection sort (used with IUIsoObjectComparator):
 	 */
+	private void selectionSort(SceneObjectsBuffer scene_objects, IUIsoObjectComparator comparator) {
+		int[] order = scene_objects.order;
+		UIsoObject[] objects = scene_objects.objects;
+
+		for (int i = 0; i < scene_objects.n_objects; i++) {
+			int smallest = i, aux;
+			for (int j = i + 1; j < scene_objects.n_objects; j++) {
+				if (comparator.doesBMustBeDrawnBeforeA(this.isometric_engine, objects[order[smallest]], objects[order[j]]))
+					smallest = j;
+			}
+			aux = order[i];
+			order[i] = order[smallest];
+			order[smallest] = aux;
+		}
+	}
 }
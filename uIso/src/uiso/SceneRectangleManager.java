@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+/**
+ * Keeps the rectangles of the viewport that have been damaged since the last frame (dirty rectangle system). The rectangles are stored using real coordinates (i.e, they
+ * are not relative to the viewport) and are clipped to the viewport when they are added. Overlapped rectangles are merged, so the stored rectangles are always disjoint
+ * and each pixel is drawn at most once. When there are too many rectangles or they cover a large part of the viewport, it is cheaper to redraw everything.
+ *
+ * @author luis
+ */
+class SceneRectangleManager {
+	/* Package: */
+	/* Each rectangle uses 4 positions: [min x, min y, max x, max y[ (real coordinates). */
+	int[] rectangles;
+
+	SceneRectangleManager(UIsoEngine isometric_engine) {
+		this.isometric_engine = isometric_engine;
+		this.viewport_w = isometric_engine.viewport_w;
+		this.viewport_h = isometric_engine.viewport_h;
+		this.max_area = (this.viewport_w * this.viewport_h) >> 1;
+		this.rectangles = new int[MAX_RECTANGLES << 2];
+		this.must_redraw_everything = true;
+	}
+
+	void addRectangle(int x, int y, int w, int h) {
+		if (this.must_redraw_everything)
+			return;
+
+		int viewport_offset_x = this.isometric_engine.viewport_offset_x, viewport_offset_y = this.isometric_engine.viewport_offset_y;
+		int min_x = Math.max(x, viewport_offset_x), min_y = Math.max(y, viewport_offset_y);
+		int max_x = Math.min(x + w, viewport_offset_x + this.viewport_w), max_y = Math.min(y + h, viewport_offset_y + this.viewport_h);
+
+		/* Is it outside the viewport? */
+		if (min_x >= max_x || min_y >= max_y)
+			return;
+
+		/* Merge it with every rectangle it overlaps. The result can overlap other rectangles, so the search must be restarted. */
+		for (int i = 0; i < this.n_rectangles; i++) {
+			int j = i << 2;
+			if (min_x < this.rectangles[j + 2] && this.rectangles[j] < max_x && min_y < this.rectangles[j + 3] && this.rectangles[j + 1] < max_y) {
+				min_x = Math.min(min_x, this.rectangles[j]);
+				min_y = Math.min(min_y, this.rectangles[j + 1]);
+				max_x = Math.max(max_x, this.rectangles[j + 2]);
+				max_y = Math.max(max_y, this.rectangles[j + 3]);
+				this.removeRectangle(i);
+				i = -1;
+			}
+		}
+
+		if (this.n_rectangles == MAX_RECTANGLES) {
+			this.invalidateAll();
+			return;
+		}
+
+		int j = this.n_rectangles << 2;
+		this.rectangles[j] = min_x;
+		this.rectangles[j + 1] = min_y;
+		this.rectangles[j + 2] = max_x;
+		this.rectangles[j + 3] = max_y;
+		this.n_rectangles++;
+		this.area += (max_x - min_x) * (max_y - min_y);
+
+		if (this.area > this.max_area)
+			this.invalidateAll();
+	}
+
+	/**
+	 * Clips the rectangles to the current viewport. It must be called after the viewport has been scrolled.
+	 */
+	void clipRectangles() {
+		int viewport_offset_x = this.isometric_engine.viewport_offset_x, viewport_offset_y = this.isometric_engine.viewport_offset_y;
+
+		for (int i = 0; i < this.n_rectangles; i++) {
+			int j = i << 2;
+			int min_x = Math.max(this.rectangles[j], viewport_offset_x), min_y = Math.max(this.rectangles[j + 1], viewport_offset_y);
+			int max_x = Math.min(this.rectangles[j + 2], viewport_offset_x + this.viewport_w), max_y = Math.min(this.rectangles[j + 3], viewport_offset_y + this.viewport_h);
+
+			if (min_x >= max_x || min_y >= max_y) {
+				this.removeRectangle(i--);
+			} else {
+				this.area -= (this.rectangles[j + 2] - this.rectangles[j]) * (this.rectangles[j + 3] - this.rectangles[j + 1]);
+				this.rectangles[j] = min_x;
+				this.rectangles[j + 1] = min_y;
+				this.rectangles[j + 2] = max_x;
+				this.rectangles[j + 3] = max_y;
+				this.area += (max_x - min_x) * (max_y - min_y);
+			}
+		}
+	}
+
+	void clear() {
+		this.n_rectangles = 0;
+		this.area = 0;
+		this.must_redraw_everything = false;
+	}
+
+	int getNumberOfRectangles() {
+		return this.n_rectangles;
+	}
+
+	void invalidateAll() {
+		this.n_rectangles = 0;
+		this.area = 0;
+		this.must_redraw_everything = true;
+	}
+
+	boolean mustRedrawEverything() {
+		return this.must_redraw_everything;
+	}
+
+	/* Private: */
+	private final static int MAX_RECTANGLES = 16;
+
+	private boolean must_redraw_everything;
+	private int n_rectangles, area, max_area, viewport_w, viewport_h;
+	private UIsoEngine isometric_engine;
+
+	private void removeRectangle(int i) {
+		int j = i << 2, last = (--this.n_rectangles) << 2;
+
+		this.area -= (this.rectangles[j + 2] - this.rectangles[j]) * (this.rectangles[j + 3] - this.rectangles[j + 1]);
+		this.rectangles[j] = this.rectangles[last];
+		this.rectangles[j + 1] = this.rectangles[last + 1];
+		this.rectangles[j + 2] = this.rectangles[last + 2];
+		this.rectangles[j + 3] = this.rectangles[last + 3];
+	}
+}
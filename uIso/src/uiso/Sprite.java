@@ -50,6 +50,38 @@ public class Sprite {
 
 	public void setImage(UIsoImage image) {
 		this.image = image;
+		this.alpha_mask = null;
+	}
+
+	/**
+	 * Computes the 1-bit alpha mask (see {@link UIsoImage#isOpaque(int, int)}) used by the hit tests (see {@link UIsoEngine#getObjectAt(int, int)}). If it is not called,
+	 * the mask is computed by the first hit test on the sprite.
+	 */
+	public void computeAlphaMask() {
+		int w = this.image.getW(), h = this.image.getH(), row_length = (w + 31) >>> 5;
+		int[] alpha_mask = new int[row_length * h];
+
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++)
+				if (this.image.isOpaque(x, y))
+					alpha_mask[y * row_length + (x >>> 5)] |= 1 << (x & 31);
+		this.alpha_mask = alpha_mask;
+	}
+
+	/**
+	 * @param x
+	 *           the pixel x-coordinate (relative to the image top-left corner)
+	 * @param y
+	 *           the pixel y-coordinate (relative to the image top-left corner)
+	 * @return true if the pixel is inside the image and is not transparent
+	 */
+	public boolean isOpaque(int x, int y) {
+		int w = this.image.getW();
+		if (x < 0 || y < 0 || x >= w || y >= this.image.getH())
+			return false;
+		if (this.alpha_mask == null)
+			this.computeAlphaMask();
+		return (this.alpha_mask[y * ((w + 31) >>> 5) + (x >>> 5)] & (1 << (x & 31))) != 0;
 	}
 
 	@Override
@@ -59,6 +91,7 @@ public class Sprite {
 		o.image = this.image;
 		o.anchor_x = this.anchor_x;
 		o.anchor_y = this.anchor_y;
+		o.alpha_mask = this.alpha_mask;
 
 		return o;
 	}
@@ -66,4 +99,6 @@ public class Sprite {
 	/* Package: */
 	UIsoImage image;
 	int anchor_x, anchor_y;
+	/* One bit per pixel of the image (1 means opaque). Each row uses (w + 31) / 32 ints. It is shared by the clones. */
+	int[] alpha_mask;
 }
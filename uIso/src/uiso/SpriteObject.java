@@ -25,4 +25,7 @@ package uiso;
  * @author luis
  */
 public class SpriteObject extends UIsoObject {
+	/* Package: */
+	/* The sprite returned by the drawer when the appearance cache is being used (see UIsoConfiguration.use_object_appearance_cache). */
+	Sprite cached_sprite;
 }
@@ -58,4 +58,6 @@ public class StringObject extends UIsoObject {
 	Object color;
 	Object font;
 	String s;
+	/* The bounds returned by the drawer when the appearance cache is being used (see UIsoConfiguration.use_object_appearance_cache). */
+	int cached_w, cached_h;
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+import java.util.Arrays;
+
+/**
+ * Computes how the terrain changes when the z-coordinates of some tiles are set. The z-coordinates of neighbor tiles can not differ by more than 1, so a change
+ * cascades to the tiles around the changed one. The cascade is computed with a worklist instead of recursion, so tall changes do not need a deep stack, and the
+ * planned tiles are marked in a bitset, so a tile reached by many changes is listed once with its final z-coordinate. The map is not modified: the plan can be
+ * checked (see {@link UIsoEngine#canSetTilesZ(Tile[], int[], int)}) and then applied (see {@link UIsoEngine#setTilesZ(Tile[], int[], int)}) without being computed
+ * again.
+ * 
+ * @author luis
+ */
+class TerraformPlanner {
+	/* Package: */
+	TerraformPlanner(UIsoEngine isometric_engine, UIsoMap map) {
+		this.map = map;
+		this.tile_max_z = isometric_engine.tile_max_z;
+		this.real_w = isometric_engine.real_w;
+		this.real_h = isometric_engine.real_h;
+		this.row_length = map.row_length;
+		this.chunk_row_length = (this.row_length + CHUNK_SIZE - 1) >> CHUNK_SIZE_BITS;
+		this.chunk_positions = new int[this.chunk_row_length * ((map.rows + CHUNK_SIZE - 1) >> CHUNK_SIZE_BITS)][];
+		this.planned = new long[(map.rows * this.row_length + 63) >> 6];
+		this.planned_x = new int[INITIAL_CAPACITY];
+		this.planned_y = new int[INITIAL_CAPACITY];
+		this.planned_z = new byte[INITIAL_CAPACITY];
+		this.worklist_x = new int[INITIAL_CAPACITY];
+		this.worklist_y = new int[INITIAL_CAPACITY];
+		this.worklist_z = new byte[INITIAL_CAPACITY];
+		this.worklist_directions = new byte[INITIAL_CAPACITY];
+		this.request_tiles = new int[1];
+		this.request_z = new int[1];
+	}
+
+	/**
+	 * Plans setting the z-coordinate of each tile in order, as if {@link UIsoEngine#setTileZ(Tile, int)} were called for them one after the other. If the request is
+	 * the same as the last one and the plan has not been invalidated since then (see {@link #invalidate()}), the last plan is kept.
+	 */
+	void plan(Tile[] tiles, int[] z, int n_tiles) {
+		if (this.isLastRequest(tiles, z, n_tiles))
+			return;
+
+		for (int i = 0; i < this.n_planned_tiles; i++) {
+			int tile = this.planned_y[i] * this.row_length + this.planned_x[i];
+			this.planned[tile >>> 6] &= ~(1L << tile);
+		}
+		this.n_planned_tiles = 0;
+
+		if (n_tiles > this.request_tiles.length) {
+			this.request_tiles = new int[n_tiles];
+			this.request_z = new int[n_tiles];
+		}
+		for (int i = 0; i < n_tiles; i++) {
+			this.request_tiles[i] = tiles[i].getY() * this.row_length + tiles[i].getX();
+			this.request_z[i] = UIsoEngine.clamp(0, this.tile_max_z, z[i]);
+			this.planTileZ(tiles[i].getX(), tiles[i].getY(), this.request_z[i]);
+		}
+		this.n_requests = n_tiles;
+		this.valid = true;
+	}
+
+	/**
+	 * Must be called when the z-coordinate of any tile changes.
+	 */
+	void invalidate() {
+		this.valid = false;
+	}
+
+	/**
+	 * @return the number of tiles reached by the last plan. Some of them may end with their current z-coordinate (e.g. a tile raised and then lowered again).
+	 */
+	int getNumberOfPlannedTiles() {
+		return this.n_planned_tiles;
+	}
+
+	int getPlannedTileX(int i) {
+		return this.planned_x[i];
+	}
+
+	int getPlannedTileY(int i) {
+		return this.planned_y[i];
+	}
+
+	int getPlannedTileZ(int i) {
+		return this.planned_z[i];
+	}
+
+	/* Private: */
+	private final static int INITIAL_CAPACITY = 256;
+	private final static int CHUNK_SIZE_BITS = 6;
+	private final static int CHUNK_SIZE = 1 << CHUNK_SIZE_BITS;
+	/* The neighbors checked when a tile has been reached from a given direction (see Tile.neighbour_direction), so a change does not reach the same tile twice. */
+	private final static byte n_neighbours[] = {3, 3, 3, 3, 1, 1, 1, 1};
+	//@formatter:off
+	private final static byte neighbour_direction[][] = {{Tile.DIRECTION_N, Tile.DIRECTION_NW, Tile.DIRECTION_NE} /* N */,
+			{Tile.DIRECTION_S, Tile.DIRECTION_SE, Tile.DIRECTION_SW}, /* S */
+			{Tile.DIRECTION_W, Tile.DIRECTION_NW, Tile.DIRECTION_SW}, /* W */
+			{Tile.DIRECTION_E, Tile.DIRECTION_SE, Tile.DIRECTION_NE}, /* E */
+			{Tile.DIRECTION_NE}, /* NE */
+			{Tile.DIRECTION_SE}, /* SE */
+			{Tile.DIRECTION_SW}, /* SW */
+			{Tile.DIRECTION_NW} /* NW */
+	};
+	private final static byte neighbour_x_offset[][] = {{-1, -1, 0} /* N */, 
+			{1, 1, 0}, /* S */
+			{-1, -1, 0}, /* W */
+			{1, 1, 0}, /* E */
+			{0}, /* NE */
+			{1}, /* SE */
+			{0}, /* SW */
+			{-1} /* NW */
+	};
+	private final static byte neighbour_y_offset[][] = {{-1, 0, -1}, /* N */
+			{1, 0, 1}, /* S */
+			{1, 0, 1}, /* W */
+			{-1, 0, -1}, /* E */
+			{-1}, /* NE */
+			{0}, /* SE */
+			{1}, /* SW */
+			{0} /* NW */
+	};
+	//@formatter:on
+
+	private UIsoMap map;
+	private int tile_max_z, real_w, real_h, row_length, chunk_row_length;
+	/*
+	 * The planned tiles: one bit per tile (indexed in row order) and the list of the tiles whose bit is set (coordinates and planned z-coordinate), in the order they
+	 * were reached.
+	 */
+	private long[] planned;
+	private int[] planned_x, planned_y;
+	private byte[] planned_z;
+	private int n_planned_tiles;
+	/* The position in the list of each planned tile grouped in chunks of 64 x 64 tiles that are created when the plan first reaches them. */
+	private int[][] chunk_positions;
+	/* The tiles whose neighbors must be checked: their coordinates, their planned z-coordinates and the direction they have been reached from. */
+	private int[] worklist_x, worklist_y;
+	private byte[] worklist_z, worklist_directions;
+	/* The last request (tiles indexed in row order). */
+	private int[] request_tiles, request_z;
+	private int n_requests;
+	private boolean valid;
+
+	private boolean isLastRequest(Tile[] tiles, int[] z, int n_tiles) {
+		if (!this.valid || n_tiles != this.n_requests)
+			return false;
+		for (int i = 0; i < n_tiles; i++) {
+			if (this.request_tiles[i] != tiles[i].getY() * this.row_length + tiles[i].getX() || this.request_z[i] != UIsoEngine.clamp(0, this.tile_max_z, z[i]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The tiles around the changed one are visited in order of distance. When the tile is raised, each reached tile that is 2 or more below the tile that reached it is
+	 * raised to 1 below it (lowering is symmetric). A reached tile only checks its neighbors in the direction it has been reached from, so each tile is checked once.
+	 */
+	private void planTileZ(int tile_x, int tile_y, int z) {
+		int current_z = this.getZ(tile_x, tile_y), head = 0, tail = 0;
+		boolean increasing = z > current_z;
+
+		if (z == current_z)
+			return;
+		this.setZ(tile_x, tile_y, z);
+		for (int i = 0; i < Tile.N_NEIGHBORS; i++)
+			tail = this.reachNeighbour(tile_x + Tile.neighbour_x_offset[i], tile_y + Tile.neighbour_y_offset[i], z, increasing, Tile.neighbour_direction[i], tail);
+
+		for (; head < tail; head++) {
+			int direction = this.worklist_directions[head];
+			tile_x = this.worklist_x[head];
+			tile_y = this.worklist_y[head];
+			z = this.worklist_z[head];
+			for (int i = 0; i < n_neighbours[direction]; i++)
+				tail = this.reachNeighbour(tile_x + neighbour_x_offset[direction][i], tile_y + neighbour_y_offset[direction][i], z, increasing,
+						neighbour_direction[direction][i], tail);
+		}
+	}
+
+	/**
+	 * Changes the neighbor of a tile with z-coordinate z if they differ by 2 or more and adds it to the worklist.
+	 * 
+	 * @return the new end of the worklist
+	 */
+	private int reachNeighbour(int neighbour_x, int neighbour_y, int z, boolean increasing, int direction, int tail) {
+		if (neighbour_x < 0 || neighbour_x > this.real_w || neighbour_y < 0 || neighbour_y > this.real_h)
+			return tail;
+
+		int difference = z - this.getZ(neighbour_x, neighbour_y);
+		if (increasing ? difference < 2 : difference > -2)
+			return tail;
+
+		z = increasing ? z - 1 : z + 1;
+		this.setZ(neighbour_x, neighbour_y, z);
+		if (tail == this.worklist_x.length) {
+			this.worklist_x = Arrays.copyOf(this.worklist_x, tail << 1);
+			this.worklist_y = Arrays.copyOf(this.worklist_y, tail << 1);
+			this.worklist_z = Arrays.copyOf(this.worklist_z, tail << 1);
+			this.worklist_directions = Arrays.copyOf(this.worklist_directions, tail << 1);
+		}
+		this.worklist_x[tail] = neighbour_x;
+		this.worklist_y[tail] = neighbour_y;
+		this.worklist_z[tail] = (byte) z;
+		this.worklist_directions[tail] = (byte) direction;
+		return tail + 1;
+	}
+
+	/**
+	 * @return the planned z-coordinate of the tile or its current one if it has not been planned
+	 */
+	private int getZ(int x, int y) {
+		int tile = y * this.row_length + x;
+
+		if ((this.planned[tile >>> 6] & (1L << tile)) == 0)
+			return this.map.getTileView(x, y).getZ();
+		return this.planned_z[this.chunk_positions[(y >> CHUNK_SIZE_BITS) * this.chunk_row_length + (x >> CHUNK_SIZE_BITS)][((y & (CHUNK_SIZE - 1)) << CHUNK_SIZE_BITS)
+				| (x & (CHUNK_SIZE - 1))]];
+	}
+
+	private void setZ(int x, int y, int z) {
+		int tile = y * this.row_length + x, chunk = (y >> CHUNK_SIZE_BITS) * this.chunk_row_length + (x >> CHUNK_SIZE_BITS);
+		int position = ((y & (CHUNK_SIZE - 1)) << CHUNK_SIZE_BITS) | (x & (CHUNK_SIZE - 1));
+
+		if ((this.planned[tile >>> 6] & (1L << tile)) == 0) {
+			this.planned[tile >>> 6] |= 1L << tile;
+			if (this.n_planned_tiles == this.planned_x.length) {
+				this.planned_x = Arrays.copyOf(this.planned_x, this.n_planned_tiles << 1);
+				this.planned_y = Arrays.copyOf(this.planned_y, this.n_planned_tiles << 1);
+				this.planned_z = Arrays.copyOf(this.planned_z, this.n_planned_tiles << 1);
+			}
+			if (this.chunk_positions[chunk] == null)
+				this.chunk_positions[chunk] = new int[CHUNK_SIZE << CHUNK_SIZE_BITS];
+			this.chunk_positions[chunk][position] = this.n_planned_tiles;
+			this.planned_x[this.n_planned_tiles] = x;
+			this.planned_y[this.n_planned_tiles++] = y;
+		}
+		this.planned_z[this.chunk_positions[chunk][position]] = (byte) z;
+	}
+}
@@ -19,8 +19,13 @@
 
 package uiso;
 
-class SpriteSceneObject extends SceneObject {
+class TerrainChunk {
 	/* Package: */
+	/* The area (real coordinates) covered by the tiles of the chunk. A zero width means that there is nothing to draw. */
+	int x, y, w, h;
+	int last_scene; /* The last scene in which the chunk has been drawn. */
+	boolean has_bounds, has_image;
 	UIsoImage image;
-	SpriteObject sprite_object;
+	/* Neighbors in the list of the chunks that own an image (see TerrainChunkManager). */
+	TerrainChunk lru_previous, lru_next;
 }
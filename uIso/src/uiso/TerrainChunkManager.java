@@ -0,0 +1,240 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+import uiso.interfaces.IChunkDrawer;
+
+/**
+ * Terrain chunk cache. The tiles are grouped in chunks of N x N tiles and the tiles of each chunk are drawn once in an off-screen image that is drawn instead of the
+ * tiles. A chunk image is drawn again only when one of its tiles changes. At most {@link UIsoConfiguration#max_terrain_chunks} images are kept. When more images are
+ * needed, the least recently drawn chunk loses its image (the chunks that own an image are kept in a list ordered by their last drawing, so finding it costs O(1)). If
+ * all the images are being used in the current scene, the tiles of the chunk are drawn directly. The chunks are created when they are first drawn.
+ * <p>
+ * Drawing the chunks in the order (chunk y, chunk x) is equivalent to draw the tiles in the order (tile y, tile x) as long as the tile sprites are not wider than the
+ * tile.
+ * 
+ * @author luis
+ */
+class TerrainChunkManager {
+	/* Package: */
+	TerrainChunkManager(UIsoEngine isometric_engine, UIsoMap map, int chunk_size, int max_chunk_images) {
+		this.isometric_engine = isometric_engine;
+		this.map = map;
+		this.drawer = isometric_engine.chunk_drawer;
+		this.sprites = isometric_engine.sprites;
+		this.tile_max_z = isometric_engine.tile_max_z;
+		this.chunk_size = chunk_size;
+		this.max_chunk_images = max_chunk_images;
+		this.chunk_row_length = (isometric_engine.w + chunk_size - 1) / chunk_size;
+		this.chunks = new TerrainChunk[((isometric_engine.h + chunk_size - 1) / chunk_size) * this.chunk_row_length];
+	}
+
+	void startScene() {
+		this.scene++;
+	}
+
+	/**
+	 * Draws the chunks that have tiles inside the informed range (map coordinates) and intersect the informed rectangle (viewport coordinates).
+	 */
+	void drawChunks(int min_tile_x, int min_tile_y, int max_tile_x, int max_tile_y, int x, int y, int w, int h) {
+		int viewport_offset_x = this.isometric_engine.viewport_offset_x, viewport_offset_y = this.isometric_engine.viewport_offset_y;
+		int min_chunk_x = (min_tile_x - this.tile_max_z) / this.chunk_size, max_chunk_x = (max_tile_x - this.tile_max_z) / this.chunk_size;
+		int min_chunk_y = (min_tile_y - this.tile_max_z) / this.chunk_size, max_chunk_y = (max_tile_y - this.tile_max_z) / this.chunk_size;
+
+		for (int chunk_y = min_chunk_y; chunk_y <= max_chunk_y; chunk_y++) {
+			for (int chunk_x = min_chunk_x; chunk_x <= max_chunk_x; chunk_x++) {
+				TerrainChunk chunk = this.chunks[chunk_y * this.chunk_row_length + chunk_x];
+
+				if (chunk == null)
+					chunk = this.chunks[chunk_y * this.chunk_row_length + chunk_x] = new TerrainChunk();
+				if (!chunk.has_bounds)
+					this.computeBounds(chunk, chunk_x, chunk_y);
+
+				/* Check the rectangles intersection. */
+				int chunk_viewport_x = chunk.x - viewport_offset_x, chunk_viewport_y = chunk.y - viewport_offset_y;
+				if (chunk.w == 0 || chunk_viewport_x >= x + w || chunk_viewport_x + chunk.w <= x || chunk_viewport_y >= y + h || chunk_viewport_y + chunk.h <= y)
+					continue;
+
+				chunk.last_scene = this.scene;
+				if (!chunk.has_image && !this.drawChunkImage(chunk, chunk_x, chunk_y)) {
+					/* There is no image available. */
+					this.drawTiles(chunk_x, chunk_y, viewport_offset_x, viewport_offset_y);
+					continue;
+				}
+				if (chunk != this.lru_head) {
+					this.unlinkChunk(chunk);
+					this.linkChunk(chunk);
+				}
+				this.drawer.drawImage(chunk_viewport_x, chunk_viewport_y, chunk.image);
+			}
+		}
+	}
+
+	void invalidateTile(Tile tile) {
+		int x = tile.getX() - this.tile_max_z, y = tile.getY() - this.tile_max_z;
+
+		if (0 <= x && x < this.isometric_engine.w && 0 <= y && y < this.isometric_engine.h) {
+			TerrainChunk chunk = this.chunks[(y / this.chunk_size) * this.chunk_row_length + x / this.chunk_size];
+			if (chunk != null)
+				chunk.has_bounds = chunk.has_image = false;
+		}
+	}
+
+	void invalidateAll() {
+		for (int i = 0; i < this.chunks.length; i++)
+			if (this.chunks[i] != null)
+				this.chunks[i].has_bounds = this.chunks[i].has_image = false;
+	}
+
+	/* Private: */
+	private int tile_max_z, chunk_size, chunk_row_length, max_chunk_images, n_chunk_images, scene;
+	private int real_x, real_y; /* Set by computeTileRealCoordinates(). */
+	private IChunkDrawer drawer;
+	private Sprite[] sprites;
+	private TerrainChunk[] chunks; /* In row order. A null chunk has never been drawn. */
+	/* The chunks that own an image from the most recently drawn (lru_head) to the least recently drawn (lru_tail). */
+	private TerrainChunk lru_head, lru_tail;
+	private UIsoEngine isometric_engine;
+	private UIsoMap map;
+
+	private void computeBounds(TerrainChunk chunk, int chunk_x, int chunk_y) {
+		int min_x = Integer.MAX_VALUE, min_y = Integer.MAX_VALUE, max_x = Integer.MIN_VALUE, max_y = Integer.MIN_VALUE;
+		int min_tile_x = this.tile_max_z + chunk_x * this.chunk_size, max_tile_x = Math.min(min_tile_x + this.chunk_size, this.tile_max_z + this.isometric_engine.w);
+		int min_tile_y = this.tile_max_z + chunk_y * this.chunk_size, max_tile_y = Math.min(min_tile_y + this.chunk_size, this.tile_max_z + this.isometric_engine.h);
+
+		for (int tile_y = min_tile_y; tile_y < max_tile_y; tile_y++) {
+			for (int tile_x = min_tile_x; tile_x < max_tile_x; tile_x++) {
+				Tile tile = this.map.getTileView(tile_x, tile_y);
+				if (!tile.isVisible())
+					continue;
+
+				this.computeTileRealCoordinates(tile);
+				this.drawer.getTileSprite(tile, this.sprites);
+				for (int i = 0; this.sprites[i] != null; i++) {
+					Sprite sprite = this.sprites[i];
+					int x = this.real_x - sprite.anchor_x, y = this.real_y - sprite.anchor_y;
+
+					this.isometric_engine.updateTileSpritesArea(sprite);
+					min_x = Math.min(min_x, x);
+					min_y = Math.min(min_y, y);
+					max_x = Math.max(max_x, x + sprite.image.getW());
+					max_y = Math.max(max_y, y + sprite.image.getH());
+				}
+			}
+		}
+
+		chunk.has_bounds = true;
+		if (min_x == Integer.MAX_VALUE) {
+			chunk.w = chunk.h = 0;
+		} else {
+			chunk.x = min_x;
+			chunk.y = min_y;
+			chunk.w = max_x - min_x;
+			chunk.h = max_y - min_y;
+		}
+	}
+
+	private void computeTileRealCoordinates(Tile tile) {
+		this.real_x = this.map.getTileRealX(tile);
+		this.real_y = this.map.getTileRealY(tile);
+	}
+
+	/**
+	 * Draws the chunk tiles in its image. Returns {@code false} if there is no image available.
+	 */
+	private boolean drawChunkImage(TerrainChunk chunk, int chunk_x, int chunk_y) {
+		UIsoImage image = chunk.image;
+
+		if (image == null || image.getW() < chunk.w || image.getH() < chunk.h) {
+			if (image == null && this.n_chunk_images < this.max_chunk_images) {
+				this.n_chunk_images++;
+				this.linkChunk(chunk);
+			} else if (image == null) {
+				/* Takes the image of the least recently drawn chunk, unless it has been drawn in this scene (so have all the others). */
+				TerrainChunk least_recently_drawn_chunk = this.lru_tail;
+				if (least_recently_drawn_chunk == null || least_recently_drawn_chunk.last_scene == this.scene)
+					return false;
+				image = least_recently_drawn_chunk.image;
+				least_recently_drawn_chunk.image = null;
+				least_recently_drawn_chunk.has_image = false;
+				this.unlinkChunk(least_recently_drawn_chunk);
+				this.linkChunk(chunk);
+			}
+
+			if (image == null || image.getW() < chunk.w || image.getH() < chunk.h)
+				image = this.drawer.createImage(chunk.w, chunk.h);
+			chunk.image = image;
+		}
+
+		this.drawer.setDrawingTarget(image);
+		this.drawer.clear(0, 0, image.getW(), image.getH());
+		this.drawTiles(chunk_x, chunk_y, chunk.x, chunk.y);
+		this.drawer.setDrawingTarget(null);
+		chunk.has_image = true;
+		return true;
+	}
+
+	private void linkChunk(TerrainChunk chunk) {
+		chunk.lru_previous = null;
+		chunk.lru_next = this.lru_head;
+		if (this.lru_head != null)
+			this.lru_head.lru_previous = chunk;
+		else
+			this.lru_tail = chunk;
+		this.lru_head = chunk;
+	}
+
+	private void unlinkChunk(TerrainChunk chunk) {
+		TerrainChunk next = chunk.lru_next, previous = chunk.lru_previous;
+
+		if (previous != null)
+			previous.lru_next = next;
+		else
+			this.lru_head = next;
+		if (next != null)
+			next.lru_previous = previous;
+		else
+			this.lru_tail = previous;
+		chunk.lru_next = chunk.lru_previous = null;
+	}
+
+	/**
+	 * Draws the chunk tiles using the informed point (real coordinates) as origin.
+	 */
+	private void drawTiles(int chunk_x, int chunk_y, int origin_x, int origin_y) {
+		int min_tile_x = this.tile_max_z + chunk_x * this.chunk_size, max_tile_x = Math.min(min_tile_x + this.chunk_size, this.tile_max_z + this.isometric_engine.w);
+		int min_tile_y = this.tile_max_z + chunk_y * this.chunk_size, max_tile_y = Math.min(min_tile_y + this.chunk_size, this.tile_max_z + this.isometric_engine.h);
+
+		for (int tile_y = min_tile_y; tile_y < max_tile_y; tile_y++) {
+			for (int tile_x = min_tile_x; tile_x < max_tile_x; tile_x++) {
+				Tile tile = this.map.getTileView(tile_x, tile_y);
+				if (!tile.isVisible())
+					continue;
+
+				this.computeTileRealCoordinates(tile);
+				this.drawer.getTileSprite(tile, this.sprites);
+				for (int i = 0; this.sprites[i] != null; i++) {
+					Sprite sprite = this.sprites[i];
+					this.drawer.drawImage(this.real_x - sprite.anchor_x - origin_x, this.real_y - sprite.anchor_y - origin_y, sprite.image);
+				}
+			}
+		}
+	}
+}
@@ -47,7 +47,7 @@ package uiso;
  * 
  * @author luis
  */
-public class Tile {
+public class Tile implements Cloneable {
 	/* Public: */
 	public final static int CORNER_N = 1;
 	public final static int CORNER_S = 2;
@@ -115,7 +115,7 @@ public class Tile {
 	 * @return this tile slope
 	 */
 	public int getSlope() {
-		return (this.data & 0x00000F00) >>> 8;
+		return (this.getData() & 0x00000F00) >>> 8;
 	}
 
 	/**
@@ -169,7 +169,7 @@ public class Tile {
 	 * @return the user data stored in this {@link Tile}
 	 */
 	public int getUserData() {
-		return (this.data & 0x0000003F);
+		return (this.getData() & 0x0000003F);
 	}
 
 	/**
@@ -179,24 +179,45 @@ public class Tile {
 	 *           user data to be stored in this {@link Tile}. It uses only the 6 least significative bits.
 	 */
 	public void setUserData(int user_data) {
-		this.data = (user_data & 0x3F) | (this.data & 0xFFFFFFC0);
+		this.setData((user_data & 0x3F) | (this.getData() & 0xFFFFFFC0));
 		assert this.getUserData() == user_data;
 	}
 
+	/**
+	 * The tiles stored as objects are equal only to themselves. The views of the packed tiles (see {@link UIsoConfiguration#tile_storage}) are equal if they refer to
+	 * the same tile.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this.view_map == null)
+			return super.equals(o);
+		if (!(o instanceof Tile))
+			return false;
+		Tile tile = (Tile) o;
+		return tile.view_map == this.view_map && tile.view_x == this.view_x && tile.view_y == this.view_y;
+	}
+
+	@Override
+	public int hashCode() {
+		if (this.view_map == null)
+			return super.hashCode();
+		return (this.view_y << 16) ^ this.view_x;
+	}
+
 	@Override
 	public String toString() {
 		return "[" + this.getX() + "," + this.getY() + "," + this.getZ() + "]";
 	}
 
 	public boolean isVisible() {
-		return (this.data & 0x00000080) != 0;
+		return (this.getData() & 0x00000080) != 0;
 	}
 
 	public void setVisibility(boolean visibility) {
 		if (visibility)
-			this.data = (1 << 7) | (this.data & 0xFFFFFF7F);
+			this.setData((1 << 7) | (this.getData() & 0xFFFFFF7F));
 		else
-			this.data &= 0xFFFFFF7F;
+			this.setData(this.getData() & 0xFFFFFF7F);
 	}
 
 	/* Package: */
@@ -211,50 +232,107 @@ public class Tile {
 
 	final static byte[] neighbour_direction = {DIRECTION_SE, DIRECTION_SW, DIRECTION_S, DIRECTION_N, DIRECTION_NW, DIRECTION_NE, DIRECTION_E, DIRECTION_W};
 
+	/**
+	 * Creates a view of a tile stored by a packed map (see {@link PackedTilesMap} and {@link MappedTilesMap}): a copy of this tile, so it has the same class, whose data
+	 * is read and written through the map. Only the data of {@link Tile} is stored by the map, so the fields of the subclasses are not kept.
+	 */
+	Tile newView(UIsoMap map, int x, int y) {
+		Tile view;
+
+		try {
+			view = (Tile) this.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+		view.view_map = map;
+		view.moveView(x, y);
+		return view;
+	}
+
+	/**
+	 * Makes this view refer to another tile of its map.
+	 */
+	void moveView(int x, int y) {
+		this.view_x = x;
+		this.view_y = y;
+	}
+
+	/**
+	 * @return all the tile data (see the layout below)
+	 */
+	int getData() {
+		if (this.view_map == null)
+			return this.data;
+		return this.view_map.getTileData(this.view_x, this.view_y);
+	}
+
+	void setData(int data) {
+		if (this.view_map == null)
+			this.data = data;
+		else
+			this.view_map.setTileData(this.view_x, this.view_y, data);
+	}
+
+	/**
+	 * The coordinates of the views come from their position in the map (the data of the packed tiles has no coordinates), so the packed maps are not limited to 256 x 256
+	 * tiles.
+	 */
 	int getX() {
-		return (this.data & 0xFF000000) >>> 24;
+		if (this.view_map != null)
+			return this.view_x;
+		return (this.getData() & 0xFF000000) >>> 24;
 	}
 
 	int getY() {
-		return (this.data & 0x00FF0000) >>> 16;
+		if (this.view_map != null)
+			return this.view_y;
+		return (this.getData() & 0x00FF0000) >>> 16;
 	}
 
 	int getZ() {
-		return (this.data & 0x0000F000) >>> 12;
+		return (this.getData() & 0x0000F000) >>> 12;
 	}
 
 	boolean mustCorrectTheSlope() {
-		return (this.data & 0x00000040) != 0;
+		return (this.getData() & 0x00000040) != 0;
 	}
 
 	void setMustCorrectTheSlope(boolean must_correct_the_slope) {
 		if (must_correct_the_slope)
-			this.data = (1 << 6) | (this.data & 0xFFFFFFBF);
+			this.setData((1 << 6) | (this.getData() & 0xFFFFFFBF));
 		else
-			this.data &= 0xFFFFFFBF;
+			this.setData(this.getData() & 0xFFFFFFBF);
 	}
 
 	void setSlope(int slope) {
-		this.data = ((slope & 0xF) << 8) | (this.data & 0xFFFFF0FF);
+		this.setData(((slope & 0xF) << 8) | (this.getData() & 0xFFFFF0FF));
 	}
 
 	void setX(int x) {
+		if (this.view_map != null) {
+			assert (x == this.view_x);
+			return;
+		}
 		assert (x <= 0xFF);
-		this.data = ((x & 0xFF) << 24) | (this.data & 0x00FFFFFF);
+		this.setData(((x & 0xFF) << 24) | (this.getData() & 0x00FFFFFF));
 	}
 
 	void setY(int y) {
+		if (this.view_map != null) {
+			assert (y == this.view_y);
+			return;
+		}
 		assert (y <= 0xFF);
-		this.data = ((y & 0xFF) << 16) | (this.data & 0xFF00FFFF);
+		this.setData(((y & 0xFF) << 16) | (this.getData() & 0xFF00FFFF));
 	}
 
 	void setZ(int z) {
 		assert (z <= 0xF);
-		this.data = ((z & 0xF) << 12) | (this.data & 0xFFFF0FFF);
+		this.setData(((z & 0xF) << 12) | (this.getData() & 0xFFFF0FFF));
 	}
 
 	/* Private: */
-	/* All data is stored in one field to save memory. */
+	/* All data is stored in one field to save memory. The packed maps (see PackedTilesMap) store the same int in an array and their tiles are views (see newView). */
 	/* The compiler allocates 4 bytes for byte, boolean, short and int types (at least when I have tested). */
 	/* [31 ... 24] (8 bits): x */
 	/* [23 ... 16] (8 bits): y */
@@ -264,4 +342,7 @@ public class Tile {
 	/* [ 6 ... 6] (1 bit ): must correct the slope */
 	/* [ 5 ... 0] (6 bits): user data */
 	private int data;
+	/* The map that stores the data of this tile if it is a view. Otherwise, it is null. */
+	private UIsoMap view_map;
+	private int view_x, view_y;
 }
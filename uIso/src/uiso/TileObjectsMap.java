@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uiso;
+
+import uiso.interfaces.ITileFactory;
+
+/**
+ * Stores each tile as an object (the tiles built by the {@link ITileFactory}), so the tiles can be subclasses of {@link Tile} with their own fields. The tiles store their
+ * coordinates in 8 bits, so the map (border included) can not be bigger than 256 x 256 tiles. The real positions of the tiles are kept in a projection table.
+ * 
+ * @author luis
+ */
+class TileObjectsMap extends UIsoMap {
+	/* Package: */
+	TileObjectsMap(int w, int h, int tile_max_z, int virtual_world_tile_size, int slope_height, ITileFactory tile_factory) {
+		super(w, h, tile_max_z, virtual_world_tile_size, slope_height);
+		assert (this.row_length <= 256 && this.rows <= 256);
+
+		this.tiles = new Tile[this.rows][this.row_length];
+		this.tile_real_positions = new int[(this.rows * this.row_length) << 1];
+		this.buildTiles(tile_factory);
+	}
+
+	@Override
+	Tile getTile(int x, int y) {
+		return this.tiles[y][x];
+	}
+
+	@Override
+	Tile getTileView(int x, int y) {
+		return this.tiles[y][x];
+	}
+
+	@Override
+	int getTileData(int x, int y) {
+		return this.tiles[y][x].getData();
+	}
+
+	@Override
+	void setTileData(int x, int y, int data) {
+		this.tiles[y][x].setData(data);
+	}
+
+	@Override
+	int getTileRealX(Tile tile) {
+		return this.tile_real_positions[(tile.getY() * this.row_length + tile.getX()) << 1];
+	}
+
+	@Override
+	int getTileRealY(Tile tile) {
+		return this.tile_real_positions[((tile.getY() * this.row_length + tile.getX()) << 1) + 1];
+	}
+
+	@Override
+	void updateTileRealPosition(Tile tile) {
+		int i = (tile.getY() * this.row_length + tile.getX()) << 1, virtual_x = tile.getX() * this.virtual_world_tile_size, virtual_y =
+				tile.getY() * this.virtual_world_tile_size;
+
+		/* The same as UIsoEngine.toRealCoordinates. */
+		this.tile_real_positions[i] = (virtual_y - virtual_x) << 1;
+		this.tile_real_positions[i + 1] = virtual_x + virtual_y - tile.getZ() * this.slope_height;
+	}
+
+	@Override
+	void storeTile(int x, int y, Tile tile) {
+		tile.setX(x);
+		tile.setY(y);
+		this.tiles[y][x] = tile;
+	}
+
+	/* Private: */
+	private Tile tiles[][];
+	/* Projection table: each tile uses 2 positions (real x and real y of its position, z included). */
+	private int[] tile_real_positions;
+}
@@ -19,11 +19,15 @@
 
 package uiso;
 
+import java.util.concurrent.ForkJoinPool;
+
 import uiso.exceptions.InvalidConfigurationException;
+import uiso.interfaces.IChunkDrawer;
 import uiso.interfaces.IDrawer;
 import uiso.interfaces.ISimulationLogic;
 import uiso.interfaces.ITileFactory;
 import uiso.interfaces.IUIsoObjectComparator;
+import uiso.interfaces.IUIsoObjectSortKey;
 
 /**
  * This class contains the configurations of the engine. It implements {@link Clonable} interface.
@@ -32,35 +36,152 @@ import uiso.interfaces.IUIsoObjectComparator;
  */
 public class UIsoConfiguration {
 	/* Public: */
-	public boolean debug, use_dirty_rectangle;
+	public boolean debug;
+	/**
+	 * Dirty rectangle system: only the areas of the viewport that have changed since the last scene are redrawn. The surface used by the {@link IDrawer} must keep its
+	 * contents between two scenes. The engine must be informed about every change that affects the scene (see {@link UIsoEngine#informObjectMotion(UIsoObject)} and
+	 * {@link UIsoEngine#informTileAppearanceChange(Tile)}). When the viewport is scrolled the whole scene is redrawn (see
+	 * {@link #use_scroll_blit}).
+	 */
+	public boolean use_dirty_rectangle;
+	/**
+	 * Scroll blit: when the viewport is scrolled, the previous scene is moved using {@link IDrawer#copyArea(int, int, int, int, int, int)} and only the exposed areas are
+	 * redrawn. If the exposed areas are too big the whole scene is redrawn. It requires the dirty rectangle system.
+	 */
+	public boolean use_scroll_blit;
+	/**
+	 * Scene order reuse: the sorted objects of the last scene are used as the starting point to sort the objects of the current scene. The objects that remain in the
+	 * scene keep their previous order, the new ones are appended and the order is repaired using an insertion sort, whose cost is proportional to how much the order
+	 * changed. When most of the objects are new the objects are sorted from scratch.
+	 */
+	public boolean use_scene_order_reuse;
+	/**
+	 * Depth sorter: the sprite objects are sorted using their virtual bounding boxes (see {@link UIsoObject#setVirtualSize(int, int, int)}). Only the objects whose
+	 * images overlap are compared. It overrides the other sorting options for the sprite objects: {@link #sprite_object_comparator} and {@link #sprite_object_sort_key}
+	 * are ignored (they are not required) and the scene order reuse is not applied to them, but all of them still apply to the string objects. The objects should have
+	 * a virtual size: the default one is a point, and the points are ordered only by the depth of their positions (which is not enough for objects that cover many
+	 * tiles).
+	 */
+	public boolean use_depth_sorter;
+	/**
+	 * Deferred object motion: {@link UIsoEngine#informObjectMotion(UIsoObject)} only marks the object as pending and the pending objects are updated once at the beginning
+	 * of {@link UIsoEngine#draw()}, so an object that moves many times between two scenes is projected and moved in the objects grid only once. The object queries (e.g,
+	 * {@link UIsoEngine#getObjectsOnTile(Tile, UIsoObject[])}) update the pending objects first.
+	 */
+	public boolean use_deferred_object_motion;
+	/**
+	 * Object appearance cache: the sprite of each {@link SpriteObject} and the bounds of each {@link StringObject} are requested to the {@link IDrawer} once and reused
+	 * until the object is removed from the engine. Changes in the appearance of an object must be informed using
+	 * {@link UIsoEngine#informObjectSizeChange(UIsoObject)}, as {@link UIsoEngine#informObjectMotion(UIsoObject)} only considers its new position.
+	 */
+	public boolean use_object_appearance_cache;
+	/**
+	 * Visible objects set: the engine keeps the objects that intersect the viewport, updating the set when an object moves and, when the viewport is scrolled, querying
+	 * only the strips that entered the viewport. Gathering the objects of a scene becomes a copy of the set instead of an objects grid query.
+	 */
+	public boolean use_visible_objects_set;
+	/**
+	 * Parallel object motion: the positions and images of batches of at least {@code parallel_object_motion_threshold} objects (see
+	 * {@link UIsoEngine#informObjectsMotion(UIsoObject[], int)} and {@link #use_deferred_object_motion}) are computed by {@code parallel_object_motion_pool}. The
+	 * {@link IDrawer#getObjectSprite(SpriteObject, Sprite[])} and {@link IDrawer#getStringBounds(String, Rectangle, Object)} methods must be thread-safe. Zero disables it.
+	 */
+	public int parallel_object_motion_threshold;
+	/**
+	 * The pool that computes the parallel object motion (see {@link #parallel_object_motion_threshold}). The engine never shuts it down. When it is null, a pool shared by
+	 * all the engines (whose threads are daemons) is created on first use.
+	 */
+	public ForkJoinPool parallel_object_motion_pool;
+	/**
+	 * Objects spatial index: how the objects are found when a scene is drawn. {@link UIsoConstants#UNIFORM_OBJECTS_GRID} (default) is a grid of
+	 * {@code objects_grid_cell_size} pixels stored in an array, {@link UIsoConstants#HASHED_OBJECTS_GRID} is the same grid stored in a hash table (only the cells that
+	 * have had objects use memory) and {@link UIsoConstants#LOOSE_OBJECTS_QUADTREE} is a loose quadtree whose smallest nodes have {@code objects_grid_cell_size} pixels.
+	 * The cells of the grids are anchors for the object corners, so the grids are slower when there are objects much bigger than a cell. A zero
+	 * {@code objects_grid_cell_size} means half of the viewport width (at least 200 pixels).
+	 */
+	public int objects_spatial_index, objects_grid_cell_size;
 	/** Viewport configuration: */
 	public int viewport_w, viewport_h;
-	/** Scene configuration: */
+	/**
+	 * Scene configuration: the maximum number of objects in the scene are the initial capacities of the scene buffers, which grow when necessary (see
+	 * {@link UIsoEngine#getSpriteSceneObjectsHighWaterMark()}).
+	 */
 	public int max_objects_in_the_scene = 50, max_string_objects_in_the_scene = 10, max_sprites_per_tile = 2;
+	/**
+	 * Terrain chunk cache: the tiles are drawn in off-screen images of {@code terrain_chunk_size} x {@code terrain_chunk_size} tiles that are reused until one of their
+	 * tiles changes (see {@link UIsoEngine#informTileAppearanceChange(Tile)}). At most {@code max_terrain_chunks} images are kept. The tile sprites must not be wider than
+	 * the tile and the {@link #drawer} must implement {@link IChunkDrawer}. A zero {@code terrain_chunk_size} disables it.
+	 */
+	public int terrain_chunk_size, max_terrain_chunks = 32;
 	/** Tile configuration: */
 	public int tile_h, tile_w, slope_height;
-	/** Map configuration: */
+	/**
+	 * The size of the biggest tile sprite (see {@link IDrawer#getTileSprite(Tile, Sprite[])}), whose anchor must be inside it. It bounds the area around a tile that
+	 * its sprites can cover, so the engine knows which tiles can reach the viewport before it has drawn them. Bigger sprites are learned as they are drawn, but they
+	 * can be missed until then. Zero values mean {@code tile_w} x ({@code tile_h} + {@code slope_height}).
+	 */
+	public int max_tile_sprite_w, max_tile_sprite_h;
+	/**
+	 * Map configuration: the map plus its border ({@code w + 2 * tile_max_z + 1} x {@code h + 2 * tile_max_z + 1} tiles) can not be bigger than 256 x 256 tiles when the
+	 * tiles are stored as objects (see {@link #tile_storage}). Otherwise, the virtual size of the map must not exceed {@link UIsoConstants#MAX_OBJECT_COORDINATE}.
+	 */
 	public int w, h, tile_max_z;
+	/**
+	 * Tile storage: {@link UIsoConstants#TILE_OBJECTS} (default) keeps the tiles built by the {@link ITileFactory}. {@link UIsoConstants#PACKED_TILES} stores the data of
+	 * all the tiles in one int array (there is no object per tile) and the tiles returned by the engine are views of it, so it is used by the big maps. The views have
+	 * the class of the tiles built by the {@link ITileFactory}, but only the data of {@link Tile} is kept (the fields of the subclasses are not), and they must be
+	 * compared using {@link Tile#equals(Object)}, as two views of the same tile can be different objects. {@link UIsoConstants#MAPPED_TILES} works like {@link UIsoConstants#PACKED_TILES} but the data is kept in a
+	 * memory-mapped file (see {@link #mapped_tiles_file}), so the heap use does not depend on the map size.
+	 */
+	public int tile_storage;
+	/**
+	 * Mapped tiles (see {@link UIsoConstants#MAPPED_TILES}): the file that keeps the tiles data. If it already exists with the same map dimensions (w, h and tile max z),
+	 * its tiles are used and the {@link ITileFactory} is not called. An existing file that is not a mapped tiles file is not overwritten (the engine creation fails). At
+	 * most {@code mapped_tiles_memory_budget} bytes of it are mapped at the same time (the chunks around the viewport are always mapped). Call
+	 * {@link UIsoEngine#flushTileStorage()} to make sure the changed tiles have been written to the file and {@link UIsoEngine#closeTileStorage()} to close it.
+	 */
+	public String mapped_tiles_file;
+	public int mapped_tiles_memory_budget = 64 << 20;
 	public IDrawer drawer;
 	public ISimulationLogic simulation_logic;
 	public ITileFactory tile_factory;
 	public IUIsoObjectComparator sprite_object_comparator, string_object_comparator;
+	/**
+	 * Depth keys: when informed, they are used instead of the corresponding {@link IUIsoObjectComparator} to sort the objects of the scene in linear time.
+	 */
+	public IUIsoObjectSortKey sprite_object_sort_key, string_object_sort_key;
 
 	@Override
 	public java.lang.Object clone() throws CloneNotSupportedException {
 		UIsoConfiguration o = (UIsoConfiguration) super.clone();
 		o.debug = this.debug;
 		o.use_dirty_rectangle = this.use_dirty_rectangle;
+		o.use_scroll_blit = this.use_scroll_blit;
+		o.use_scene_order_reuse = this.use_scene_order_reuse;
+		o.use_depth_sorter = this.use_depth_sorter;
+		o.use_deferred_object_motion = this.use_deferred_object_motion;
+		o.use_object_appearance_cache = this.use_object_appearance_cache;
+		o.use_visible_objects_set = this.use_visible_objects_set;
+		o.parallel_object_motion_threshold = this.parallel_object_motion_threshold;
+		o.parallel_object_motion_pool = this.parallel_object_motion_pool;
 
+		o.objects_spatial_index = this.objects_spatial_index;
+		o.objects_grid_cell_size = this.objects_grid_cell_size;
+		o.tile_storage = this.tile_storage;
+		o.mapped_tiles_file = this.mapped_tiles_file;
+		o.mapped_tiles_memory_budget = this.mapped_tiles_memory_budget;
 		o.max_sprites_per_tile = this.max_sprites_per_tile;
 		o.viewport_w = this.viewport_w;
 		o.viewport_h = this.viewport_h;
 		o.max_objects_in_the_scene = this.max_objects_in_the_scene;
 		o.max_string_objects_in_the_scene = this.max_string_objects_in_the_scene;
+		o.terrain_chunk_size = this.terrain_chunk_size;
+		o.max_terrain_chunks = this.max_terrain_chunks;
 
 		o.tile_h = this.tile_h;
 		o.tile_w = this.tile_w;
 		o.slope_height = this.slope_height;
+		o.max_tile_sprite_w = this.max_tile_sprite_w;
+		o.max_tile_sprite_h = this.max_tile_sprite_h;
 
 		o.w = this.w;
 		o.h = this.h;
@@ -72,6 +193,8 @@ public class UIsoConfiguration {
 
 		o.sprite_object_comparator = this.sprite_object_comparator;
 		o.string_object_comparator = this.string_object_comparator;
+		o.sprite_object_sort_key = this.sprite_object_sort_key;
+		o.string_object_sort_key = this.string_object_sort_key;
 
 		return o;
 	}
@@ -88,28 +211,55 @@ public class UIsoConfiguration {
 
 		if (this.w <= 0 || this.h <= 0)
 			throw new InvalidConfigurationException("The map dimensions are not valid.");
-		if (this.w + (this.tile_max_z << 1) + 1 > 256 || this.h + (this.tile_max_z << 1) + 1 > 256)
+		if (this.tile_storage == UIsoConstants.TILE_OBJECTS && (this.w + (this.tile_max_z << 1) + 1 > 256 || this.h + (this.tile_max_z << 1) + 1 > 256))
+			throw new InvalidConfigurationException("The map dimensions are too big.");
+		if ((long) (Math.max(this.w, this.h) + (this.tile_max_z << 1) + 1) * (this.tile_w >> 2) > UIsoConstants.MAX_OBJECT_COORDINATE)
 			throw new InvalidConfigurationException("The map dimensions are too big.");
 		if (this.slope_height <= 0)
 			throw new InvalidConfigurationException("Tile slope heigth is invalid.");
+		if (this.max_tile_sprite_w < 0 || this.max_tile_sprite_h < 0)
+			throw new InvalidConfigurationException("The maximum tile sprite size is invalid.");
 
 		if (this.max_objects_in_the_scene < 0)
 			throw new InvalidConfigurationException("The maximum number of objects in a scene is invalid.");
 		if (this.max_string_objects_in_the_scene < 0)
 			throw new InvalidConfigurationException("The maximum number of string objects in a scene is invalid.");
 
+		if (this.objects_spatial_index != UIsoConstants.UNIFORM_OBJECTS_GRID && this.objects_spatial_index != UIsoConstants.HASHED_OBJECTS_GRID
+				&& this.objects_spatial_index != UIsoConstants.LOOSE_OBJECTS_QUADTREE)
+			throw new InvalidConfigurationException("The objects spatial index is invalid.");
+		if (this.objects_grid_cell_size < 0)
+			throw new InvalidConfigurationException("The objects grid cell size is invalid.");
+		if (this.tile_storage != UIsoConstants.TILE_OBJECTS && this.tile_storage != UIsoConstants.PACKED_TILES && this.tile_storage != UIsoConstants.MAPPED_TILES)
+			throw new InvalidConfigurationException("The tile storage is invalid.");
+		if (this.tile_storage == UIsoConstants.MAPPED_TILES && this.mapped_tiles_file == null)
+			throw new InvalidConfigurationException("No mapped tiles file has been informed.");
+		if (this.mapped_tiles_memory_budget <= 0)
+			throw new InvalidConfigurationException("The mapped tiles memory budget is invalid.");
+		if (this.parallel_object_motion_threshold < 0)
+			throw new InvalidConfigurationException("The parallel object motion threshold is invalid.");
+
+		if (this.terrain_chunk_size < 0)
+			throw new InvalidConfigurationException("The terrain chunk size is invalid.");
+		if (this.terrain_chunk_size > 0 && this.max_terrain_chunks <= 0)
+			throw new InvalidConfigurationException("The maximum number of terrain chunks is invalid.");
+
 		if (this.drawer == null)
 			throw new InvalidConfigurationException("No IDrawer object has been informed.");
+		if (this.terrain_chunk_size > 0 && !(this.drawer instanceof IChunkDrawer))
+			throw new InvalidConfigurationException("The terrain chunk cache requires an IChunkDrawer.");
 		if (this.simulation_logic == null)
 			throw new InvalidConfigurationException("No ISimulationLogic object has been informed.");
 		if (this.tile_factory == null)
 			throw new InvalidConfigurationException("No ITileFactory object has been informed.");
 		if (this.viewport_w < 8 || this.viewport_h < 8)
 			throw new InvalidConfigurationException("The viewport dimensions are invalid.");
+		if (this.use_scroll_blit && !this.use_dirty_rectangle)
+			throw new InvalidConfigurationException("The scroll blit requires the dirty rectangle system.");
 
-		if (this.sprite_object_comparator == null)
+		if (this.sprite_object_comparator == null && this.sprite_object_sort_key == null && !this.use_depth_sorter)
 			throw new InvalidConfigurationException("The IUIsoObjectComparator to sort SpriteSceneObjects is invalid.");
-		if (this.string_object_comparator == null)
+		if (this.string_object_comparator == null && this.string_object_sort_key == null)
 			throw new InvalidConfigurationException("The IUIsoObjectComparator to sort StringSceneObjects is invalid.");
 	}
 }
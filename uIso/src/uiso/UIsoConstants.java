@@ -45,5 +45,18 @@ public class UIsoConstants {
 	public final static int BELOW_SW_LINE = 4;
 	public final static int BELOW_ES_LINE = 8;
 
+	/* Spatial indices used to find the objects inside the viewport (see UIsoConfiguration.objects_spatial_index). */
+	public final static int UNIFORM_OBJECTS_GRID = 0;
+	public final static int HASHED_OBJECTS_GRID = 1;
+	public final static int LOOSE_OBJECTS_QUADTREE = 2;
+
+	/* The biggest absolute value of the object x-coordinate and y-coordinate (22 bits, see UIsoObject.setX). */
+	public final static int MAX_OBJECT_COORDINATE = 0x3FFFFF;
+
+	/* How the map tiles are stored (see UIsoConfiguration.tile_storage). */
+	public final static int TILE_OBJECTS = 0;
+	public final static int PACKED_TILES = 1;
+	public final static int MAPPED_TILES = 2;
+
 	/* Package: */
 }
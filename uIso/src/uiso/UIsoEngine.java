@@ -19,9 +19,16 @@
 
 package uiso;
 
+import java.io.IOException;
+import java.util.Arrays;
+
+import uiso.exceptions.InvalidSnapshotException;
 import uiso.exceptions.InvalidTileCoordinatesException;
+import uiso.interfaces.IBulkSimulationLogic;
+import uiso.interfaces.IChunkDrawer;
 import uiso.interfaces.IDrawer;
 import uiso.interfaces.ISimulationLogic;
+import uiso.interfaces.IUIsoObjectFactory;
 import uiso.util.MathUtils;
 import uiso_awt_demo.object.Wall;
 
@@ -114,24 +121,46 @@ public class UIsoEngine {
 		this.tile_max_z = configuration.tile_max_z;
 		this.slope_height = configuration.slope_height;
 		this.virtual_world_tile_size = (configuration.tile_w >> 2);
-		this.map = new UIsoMap(this.w = configuration.w, this.h = configuration.h, this.tile_max_z, configuration.tile_factory);
+		switch (configuration.tile_storage) {
+			case UIsoConstants.PACKED_TILES:
+				this.map = new PackedTilesMap(this.w = configuration.w, this.h = configuration.h, this.tile_max_z, this.virtual_world_tile_size, this.slope_height,
+						configuration.tile_factory);
+			break;
+			case UIsoConstants.MAPPED_TILES:
+				this.map = new MappedTilesMap(this.w = configuration.w, this.h = configuration.h, this.tile_max_z, this.virtual_world_tile_size, this.slope_height,
+						configuration.tile_factory, configuration.mapped_tiles_file, configuration.mapped_tiles_memory_budget,
+						(configuration.viewport_w / configuration.tile_w + configuration.viewport_h / configuration.tile_h) + this.tile_max_z + 2);
+			break;
+			default:
+				this.map = new TileObjectsMap(this.w = configuration.w, this.h = configuration.h, this.tile_max_z, this.virtual_world_tile_size, this.slope_height,
+						configuration.tile_factory);
+			break;
+		}
+		/* The heights of the loaded tiles are not known. */
+		if (this.map.tiles_loaded)
+			this.highest_tile_z = this.tile_max_z;
 		this.maping_helper = new MapingHelper(this.tile_w, this.tile_h, this.virtual_world_tile_size, this.slope_height);
 		this.real_w = this.w + (this.tile_max_z << 1) - 1;
 		this.real_h = this.h + (this.tile_max_z << 1) - 1;
 
-		this.affected_tiles = this.tile_max_z > 0 ? new Tile[(this.tile_max_z * this.tile_max_z) << 2] : null;
+		this.terraform_planner = new TerraformPlanner(this, this.map);
 
 		this.use_dirty_rectangle_system = configuration.use_dirty_rectangle;
+		this.use_object_appearance_cache = configuration.use_object_appearance_cache;
+		this.use_scroll_blit = configuration.use_scroll_blit;
 		this.viewport_h = configuration.viewport_h;
 		this.viewport_h_half = (this.viewport_h >> 1);
 		this.viewport_w = configuration.viewport_w;
 		this.viewport_w_half = (this.viewport_w >> 1);
 		this.drawer = configuration.drawer;
+		if (this.drawer instanceof IChunkDrawer)
+			this.chunk_drawer = (IChunkDrawer) this.drawer;
 		this.simulation_logic = configuration.simulation_logic;
+		if (this.simulation_logic instanceof IBulkSimulationLogic)
+			this.bulk_simulation_logic = (IBulkSimulationLogic) this.simulation_logic;
 		this.real_coordinates = new Point();
 		this.virtual_coordinates = new Point();
 		this.point = new Point();
-		this.viewport_point = new Point();
 		this.viewport_center = new Point();
 		this.string_bounds = new Rectangle();
 		this.sprites = new Sprite[configuration.max_sprites_per_tile + 1];
@@ -142,14 +171,32 @@ public class UIsoEngine {
 		this.viewport_offset_x = this.real_coordinates.x - this.viewport_w_half;
 		this.viewport_offset_y = this.real_coordinates.y - this.viewport_h_half;
 
-		this.objects_grid_manager = new ObjectsGridManager(this);
+		this.objects_grid_manager = new ObjectsGridManager(this, configuration.objects_spatial_index, configuration.objects_grid_cell_size);
+		this.objects_tile_index = new ObjectsTileIndex(this, this.map);
+		if (configuration.use_visible_objects_set)
+			this.visible_objects_set = new VisibleObjectsSet(this, this.objects_grid_manager);
+		this.objects_motion_manager = new ObjectsMotionManager(this, configuration.use_deferred_object_motion, configuration.parallel_object_motion_threshold,
+				configuration.parallel_object_motion_pool);
+		this.viewport_tile_spans = new VisibleTileSpans(this);
+		this.region_tile_spans = new VisibleTileSpans(this);
+		this.tile_spans_outdated = true;
+		/* The anchor is inside the sprite, so the sprite can extend its whole size to any side. */
+		this.tile_sprites_left = this.tile_sprites_right = configuration.max_tile_sprite_w != 0 ? configuration.max_tile_sprite_w : configuration.tile_w;
+		this.tile_sprites_above = this.tile_sprites_below =
+				configuration.max_tile_sprite_h != 0 ? configuration.max_tile_sprite_h : configuration.tile_h + configuration.slope_height;
 
 		this.scene_objects_manager =
 				new SceneObjectsManager(this, configuration.max_objects_in_the_scene, configuration.max_string_objects_in_the_scene, configuration.sprite_object_comparator,
-						configuration.string_object_comparator);
+						configuration.string_object_comparator, configuration.sprite_object_sort_key, configuration.string_object_sort_key,
+						configuration.use_scene_order_reuse, configuration.use_depth_sorter);
 
 		/* Dirty rectangle system. */
-		// this.scene_rectangle_manager = new SceneRectangleManager(configuration);
+		if (this.use_dirty_rectangle_system)
+			this.scene_rectangle_manager = new SceneRectangleManager(this);
+
+		/* Terrain chunk cache. */
+		if (configuration.terrain_chunk_size > 0)
+			this.terrain_chunk_manager = new TerrainChunkManager(this, this.map, configuration.terrain_chunk_size, configuration.max_terrain_chunks);
 	}
 
 	/**
@@ -175,56 +222,47 @@ public class UIsoEngine {
 	 * 
 	 */
 	public void draw() {
-		int min_x, min_y, max_x, max_y;
-		Tile tile;
-
+		this.scene_gather_time = this.scene_sort_time = this.scene_objects_draw_time = 0;
+		this.objects_motion_manager.updateObjects();
+		this.map.prepareTilesAround(this.viewport_center.x / this.virtual_world_tile_size, this.viewport_center.y / this.virtual_world_tile_size);
 		this.drawer.beginDrawing(this);
+		if (this.terrain_chunk_manager != null)
+			this.terrain_chunk_manager.startScene();
+
+		/* Has the viewport been scrolled? */
+		if (this.use_dirty_rectangle_system && (this.viewport_offset_x != this.last_viewport_offset_x || this.viewport_offset_y != this.last_viewport_offset_y)) {
+			if (this.use_scroll_blit && !this.debug)
+				this.scrollScene();
+			else
+				this.scene_rectangle_manager.invalidateAll();
+		}
 
-		/* Use the dirty rectangle system. */
-		if (this.use_dirty_rectangle_system) {
-			/* It is not ready yet. */
+		/* Use the dirty rectangle system. In debug mode the whole scene is always redrawn as the debug information is drawn everywhere. */
+		if (this.use_dirty_rectangle_system && !this.debug && !this.scene_rectangle_manager.mustRedrawEverything()) {
+			int n_rectangles = this.scene_rectangle_manager.getNumberOfRectangles();
+			int[] rectangles = this.scene_rectangle_manager.rectangles;
+
+			if (n_rectangles > 0) {
+				this.gatherObjects();
+
+				for (int i = 0; i < n_rectangles; i++) {
+					int j = i << 2;
+					int x = rectangles[j] - this.viewport_offset_x, y = rectangles[j + 1] - this.viewport_offset_y;
+					int w = rectangles[j + 2] - rectangles[j], h = rectangles[j + 3] - rectangles[j + 1];
+
+					this.drawer.setClip(x, y, w, h);
+					this.drawer.clear(x, y, w, h);
+					this.drawTiles(x, y, w, h);
+					this.drawSceneObjects(x, y, w, h);
+				}
+			}
 
 			/* Without dirty rectangle system. */
 		} else {
 			this.drawer.setClip(0, 0, this.viewport_w, this.viewport_h);
 			this.drawer.clear();
 
-			/* As the mapping has an error of +-2 pixels we need to consider this. */
-			this.viewport_point.x = -2;
-			this.viewport_point.y = -2;
-			tile = this.internalGetTileFromRealCoordinates(this.viewport_point, null);
-			min_y = tile.getY();
-			if (min_y < this.tile_max_z)
-				min_y = this.tile_max_z;
-
-			this.viewport_point.x = this.viewport_w - 1 + 2;
-			tile = this.internalGetTileFromRealCoordinates(this.viewport_point, null);
-			min_x = tile.getX();
-			if (min_x < this.tile_max_z)
-				min_x = this.tile_max_z;
-
-			this.viewport_point.y = this.viewport_h - 1 + 2;
-			tile = this.internalGetTileFromRealCoordinates(this.viewport_point, null);
-			max_y = tile.getY();
-			if (max_y >= this.h + this.tile_max_z)
-				max_y = (this.h + this.tile_max_z - 1);
-
-			this.viewport_point.x = 0 - 2;
-			tile = this.internalGetTileFromRealCoordinates(this.viewport_point, null);
-			max_x = tile.getX();
-			if (max_x >= this.w + this.tile_max_z)
-				max_x = (this.w + this.tile_max_z - 1);
-
-			/* Draw the tiles. */
-			for (int y = min_y; y <= max_y; y++) {
-				for (int x = min_x; x <= max_x; x++) {
-					tile = this.map.tiles[y][x];
-					if (tile.isVisible())
-						this.drawTile(tile);
-				}
-			}
-
-			/* Draw the objects. */
+			this.drawTiles(0, 0, this.viewport_w, this.viewport_h);
 			this.drawObjects();
 
 			/* Debug: */
@@ -253,8 +291,11 @@ public class UIsoEngine {
 		this.drawer.endDrawing();
 
 		/* Dirty rectangle system. */
-		// this.last_viewport_offset_x = this.viewport_offset_x;
-		// this.last_viewport_offset_y = this.viewport_offset_y;
+		if (this.use_dirty_rectangle_system) {
+			this.scene_rectangle_manager.clear();
+			this.last_viewport_offset_x = this.viewport_offset_x;
+			this.last_viewport_offset_y = this.viewport_offset_y;
+		}
 	}
 
 	/**
@@ -268,28 +309,33 @@ public class UIsoEngine {
 	 * @return {@code true} if tile z-coordinate can be changed to desired value
 	 */
 	public boolean canSetTileZ(Tile tile, int z) {
-		boolean can_set_z;
-		int new_z = clamp(0, this.tile_max_z, z), x = tile.getX(), y = tile.getY();
-
-		this.n_affected_tiles = 0;
-		can_set_z = new_z == tile.getZ() ? true : this.internalCanSetTileZ(tile, new_z);
-		for (int i = 0; i < Tile.N_NEIGHBORS && can_set_z; i++) {
-			int neighbour_x = x + Tile.neighbour_x_offset[i];
-			int neighbour_y = y + Tile.neighbour_y_offset[i];
-
-			if (0 <= neighbour_x && neighbour_x <= this.real_w && 0 <= neighbour_y && neighbour_y <= this.real_h) {
-				Tile neighbour_tile = this.map.tiles[neighbour_y][neighbour_x];
-				int difference = (new_z - neighbour_tile.getZ());
-				boolean increasing = difference > 0;
-
-				if (difference >= 2 && increasing) {
-					can_set_z = can_set_z && this.recursiveSetTileZ(neighbour_tile, new_z - 1, increasing, Tile.neighbour_direction[i], true);
-				} else if (difference <= -2 && !increasing) {
-					can_set_z = can_set_z && this.recursiveSetTileZ(neighbour_tile, new_z + 1, increasing, Tile.neighbour_direction[i], true);
-				}
-			}
+		this.terraform_tiles[0] = tile;
+		this.terraform_z[0] = z;
+		return this.canSetTilesZ(this.terraform_tiles, this.terraform_z, 1);
+	}
+
+	/**
+	 * The same as {@link #canSetTileZ(Tile, int)} but for many tiles, as if they were changed one after the other. The plan of the change is kept, so calling
+	 * {@link #setTilesZ(Tile[], int[], int)} next with the same arguments does not compute it again.
+	 * 
+	 * @param tiles
+	 *           the tiles that will have their z-coordinates changed
+	 * @param z
+	 *           the new z-coordinate of each tile
+	 * @param n_tiles
+	 *           the number of tiles
+	 * @return {@code true} if all the tiles affected by the change can have their z-coordinates changed
+	 */
+	public boolean canSetTilesZ(Tile[] tiles, int[] z, int n_tiles) {
+		this.terraform_planner.plan(tiles, z, n_tiles);
+		for (int i = 0; i < this.terraform_planner.getNumberOfPlannedTiles(); i++) {
+			int tile_x = this.terraform_planner.getPlannedTileX(i), tile_y = this.terraform_planner.getPlannedTileY(i), tile_z = this.terraform_planner.getPlannedTileZ(i);
+			Tile tile = this.map.getTile(tile_x, tile_y);
+
+			if (tile.getZ() != tile_z && !this.internalCanSetTileZ(tile, tile_z))
+				return false;
 		}
-		return can_set_z;
+		return true;
 	}
 
 	public final int getAbsoluteHeightOfPointInTileSlopeSurface(Tile tile, int x, int y) {
@@ -397,7 +443,7 @@ public class UIsoEngine {
 			this.tile_position_relative_map_polygon |= UIsoConstants.BELOW_SW_LINE;
 		}
 
-		return this.map.tiles[clamped_y][clamped_x];
+		return this.map.getTile(clamped_x, clamped_y);
 	}
 
 	public Tile getTile(Point p) throws InvalidTileCoordinatesException {
@@ -407,25 +453,15 @@ public class UIsoEngine {
 	public Tile getTile(int x, int y) throws InvalidTileCoordinatesException {
 		if (!this.isValidTileCoordinates(x, y))
 			throw new InvalidTileCoordinatesException("There is no tile with the following coordinates: [" + x + "," + y + "].");
-		return this.map.tiles[y + this.tile_max_z][x + this.tile_max_z];
+		return this.map.getTile(x + this.tile_max_z, y + this.tile_max_z);
 	}
 
 	public int getTileX(UIsoObject o) {
-		int x = o.getX();
-		if (x >= 0) {
-			return x / this.virtual_world_tile_size;
-		} else {
-			return (x / this.virtual_world_tile_size) - 1;
-		}
+		return this.toTileCoordinate(o.getX());
 	}
 
 	public int getTileY(UIsoObject o) {
-		int y = o.getY();
-		if (y >= 0) {
-			return y / this.virtual_world_tile_size;
-		} else {
-			return (y / this.virtual_world_tile_size) - 1;
-		}
+		return this.toTileCoordinate(o.getY());
 	}
 
 	public int getTileX(Tile tile) {
@@ -436,6 +472,56 @@ public class UIsoEngine {
 		return tile.getY() - this.tile_max_z;
 	}
 
+	/**
+	 * The scene buffers grow as needed. These high-water marks can be used to tune {@link UIsoConfiguration#max_objects_in_the_scene} and
+	 * {@link UIsoConfiguration#max_string_objects_in_the_scene}.
+	 * 
+	 * @return the maximum number of sprite objects that a scene has had
+	 */
+	public int getSpriteSceneObjectsHighWaterMark() {
+		return this.scene_objects_manager.getSpriteSceneObjectsHighWaterMark();
+	}
+
+	/**
+	 * @return the maximum number of string objects that a scene has had
+	 * @see #getSpriteSceneObjectsHighWaterMark()
+	 */
+	public int getStringSceneObjectsHighWaterMark() {
+		return this.scene_objects_manager.getStringSceneObjectsHighWaterMark();
+	}
+
+	/**
+	 * Scene profile: time spent by the last {@link #draw()} to find the objects inside the viewport (gather), to sort them and to draw them.
+	 * 
+	 * @return the time in nanoseconds
+	 */
+	public long getSceneGatherTime() {
+		return this.scene_gather_time;
+	}
+
+	/**
+	 * @return the time in nanoseconds
+	 * @see #getSceneGatherTime()
+	 */
+	public long getSceneSortTime() {
+		return this.scene_sort_time;
+	}
+
+	/**
+	 * @return the time in nanoseconds
+	 * @see #getSceneGatherTime()
+	 */
+	public long getSceneObjectsDrawTime() {
+		return this.scene_objects_draw_time;
+	}
+
+	/**
+	 * @return the number of cells (or quadtree nodes) created by the objects spatial index (see {@link UIsoConfiguration#objects_spatial_index})
+	 */
+	public int getNumberOfObjectsSpatialIndexCells() {
+		return this.objects_grid_manager.getNumberOfCells();
+	}
+
 	public int getTileZ(Tile tile) {
 		return tile.getZ();
 	}
@@ -456,109 +542,339 @@ public class UIsoEngine {
 		this.informObjectMotion(object);
 	}
 
-	public void deleteObject(int x, int y) {		
-		UIsoObject object;
-		UIsoObjectsGridCell objects_grid_cell;
-		Point find = new Point(x,y);
-		int offsetx = (this.real_coordinates.x - this.viewport_w_half);
-		int offsety = (this.real_coordinates.y - this.viewport_h_half);
-		Point nw_point = this.objects_grid_manager.getNWPoint(offsetx, offsety);
-		//major jank risk!!! i have no idea why it needs to be minus then divided by 4 to work. very likely to break later
-		offsetx = offsetx - (nw_point.x/4);
-		offsety = offsety + nw_point.y;
-		objects_grid_cell = this.objects_grid_manager.getObjectsGridCellAndCellCoordinates(offsetx, offsety, find);
-		assert (objects_grid_cell != null);
-		
-		if (objects_grid_cell != null){
-			object = objects_grid_cell.findObject(x,y);
-			if(object == null){
-				return;
-			}
+	/**
+	 * Removes all the objects whose position is over a tile, not only one of them (see {@link #removeObjectsOnTile(Tile)}).
+	 * 
+	 * @param x
+	 *           the tile x-coordinate
+	 * @param y
+	 *           the tile y-coordinate
+	 * @throws InvalidTileCoordinatesException
+	 *            if there is no tile with the informed coordinates
+	 * @deprecated use {@link #removeObjectsOnTile(Tile)} with {@link #getTile(int, int)}, which also tells how many objects have been removed
+	 */
+	@Deprecated
+	public void deleteObject(int x, int y) throws InvalidTileCoordinatesException {
+		this.removeObjectsOnTile(this.getTile(x, y));
+	}
 
-			objects_grid_cell.removeObject(object);
-			object.removeObjectFromLinkedList(UIsoObject.NW_VERTEX);
-			object.removeObjectFromLinkedList(UIsoObject.NE_VERTEX);
-			object.removeObjectFromLinkedList(UIsoObject.WS_VERTEX);
-			object.removeObjectFromLinkedList(UIsoObject.ES_VERTEX);
-		}else{		
-		System.out.println("empty " + x + "," + y);	
-		}	
+	/**
+	 * Lists the objects whose position is over a tile (i.e, {@link #getTileX(UIsoObject)} and {@link #getTileY(UIsoObject)} return the tile coordinates). The engine keeps
+	 * an index updated by {@link #insertObject(UIsoObject)}, {@link #informObjectMotion(UIsoObject)} and {@link #removeObject(UIsoObject)}, so no search is done.
+	 * 
+	 * @param tile
+	 *           the tile
+	 * @param objects
+	 *           the array that will receive the objects. If it is too small, only the first objects are stored.
+	 * @return the number of objects on the tile (it can be bigger than the array length)
+	 */
+	public int getObjectsOnTile(Tile tile, UIsoObject[] objects) {
+		int n = 0;
+
+		this.objects_motion_manager.updateObjects();
+
+		for (int slot = this.objects_tile_index.getFirstSlot(tile); slot >= 0; slot = this.objects_tile_index.getNextSlot(slot)) {
+			if (n < objects.length)
+				objects[n] = this.objects_grid_manager.slot_objects[slot];
+			n++;
+		}
+		return n;
 	}
 
-	public void informObjectSizeChange(UIsoObject object) {
-		this.removeObject(object);
-		this.insertObject(object);
+	/**
+	 * Removes (see {@link #removeObject(UIsoObject)}) the objects whose position is over a tile.
+	 * 
+	 * @param tile
+	 *           the tile
+	 * @return the number of removed objects
+	 */
+	public int removeObjectsOnTile(Tile tile) {
+		int n = 0, slot;
+
+		this.objects_motion_manager.updateObjects();
+
+		while ((slot = this.objects_tile_index.getFirstSlot(tile)) >= 0) {
+			this.removeObject(this.objects_grid_manager.slot_objects[slot]);
+			n++;
+		}
+		return n;
 	}
 
-	public void informObjectMotion(UIsoObject object) {
-		System.out.println("inform " + object);
-		int nw_x, nw_y, ne_x, ne_y, ws_x, ws_y, es_x, es_y;
-		UIsoObjectsGridCell nw_cell, ne_cell, es_cell, ws_cell;
-
-		this.virtual_coordinates.x = object.getX() + this.tile_max_z * this.virtual_world_tile_size;
-		this.virtual_coordinates.y = object.getY() + this.tile_max_z * this.virtual_world_tile_size;
-		this.virtual_coordinates.z = object.getZ();
-		toRealCoordinates(this.virtual_coordinates, this.real_coordinates);
-		
-		System.out.println("looking " + object.getX() + "," + object.getY());
-		//deleteObject(this.virtual_coordinates.x,this.virtual_coordinates.y);
-		if (object instanceof SpriteObject) {
-			UIsoImage image;
-			Sprite sprite;
+	/**
+	 * Lists the objects whose area (i.e, the area covered by their sprites or strings) intersects a rectangle of the viewport. The objects grid is queried, so only the
+	 * objects near the rectangle are tested.
+	 * 
+	 * @param x
+	 *           the rectangle top-left corner x-coordinate (viewport coordinates)
+	 * @param y
+	 *           the rectangle top-left corner y-coordinate (viewport coordinates)
+	 * @param w
+	 *           the rectangle width
+	 * @param h
+	 *           the rectangle height
+	 * @param objects
+	 *           the array that will receive the objects. If it is too small, only the first objects are stored.
+	 * @return the number of objects found (it can be bigger than the array length)
+	 */
+	public int getObjectsInRectangle(int x, int y, int w, int h, UIsoObject[] objects) {
+		int min_x = this.viewport_offset_x + x, min_y = this.viewport_offset_y + y, max_x = min_x + w, max_y = min_y + h, n = 0;
+
+		if (w <= 0 || h <= 0)
+			return 0;
+		this.objects_motion_manager.updateObjects();
+
+		int n_found_objects = this.objects_grid_manager.findObjects(min_x, min_y, max_x - 1, max_y - 1);
+		UIsoObject[] found_objects = this.objects_grid_manager.found_objects;
+		for (int i = 0; i < n_found_objects; i++) {
+			UIsoObject object = found_objects[i];
+			if (object.bounds_x < max_x && object.bounds_x + object.bounds_w > min_x && object.bounds_y < max_y && object.bounds_y + object.bounds_h > min_y) {
+				if (n < objects.length)
+					objects[n] = object;
+				n++;
+			}
+		}
+		return n;
+	}
 
-			this.drawer.getObjectSprite((SpriteObject) object, this.sprites);
-			sprite = this.sprites[0];
-			if (sprite == null){
-			System.out.println("null sprite");
-				return;
+	/**
+	 * Lists the objects whose position (see {@link UIsoObject#getX()} and {@link UIsoObject#getY()}) is at most {@code radius} virtual units away from a point of the map
+	 * plane (the z-coordinates are ignored). Only the objects over the tiles around the point are tested (see {@link #getObjectsOnTile(Tile, UIsoObject[])}).
+	 * 
+	 * @param x
+	 *           the point x-coordinate (virtual coordinates)
+	 * @param y
+	 *           the point y-coordinate (virtual coordinates)
+	 * @param radius
+	 *           the radius (virtual units)
+	 * @param objects
+	 *           the array that will receive the objects. If it is too small, only the first objects are stored.
+	 * @return the number of objects found (it can be bigger than the array length)
+	 */
+	public int getObjectsInRadius(int x, int y, int radius, UIsoObject[] objects) {
+		int n = 0, rows = this.map.rows, row_length = this.map.row_length;
+		long squared_radius = (long) radius * radius;
+
+		if (radius < 0)
+			return 0;
+		this.objects_motion_manager.updateObjects();
+
+		int min_tile_x = Math.max(0, this.toTileCoordinate(x - radius) + this.tile_max_z);
+		int min_tile_y = Math.max(0, this.toTileCoordinate(y - radius) + this.tile_max_z);
+		int max_tile_x = Math.min(row_length - 1, this.toTileCoordinate(x + radius) + this.tile_max_z);
+		int max_tile_y = Math.min(rows - 1, this.toTileCoordinate(y + radius) + this.tile_max_z);
+
+		for (int tile_y = min_tile_y; tile_y <= max_tile_y; tile_y++) {
+			for (int tile_x = min_tile_x; tile_x <= max_tile_x; tile_x++) {
+				Tile tile = this.map.getTileView(tile_x, tile_y);
+				for (int slot = this.objects_tile_index.getFirstSlot(tile); slot >= 0; slot = this.objects_tile_index.getNextSlot(slot)) {
+					UIsoObject object = this.objects_grid_manager.slot_objects[slot];
+					long delta_x = object.getX() - x, delta_y = object.getY() - y;
+					if (delta_x * delta_x + delta_y * delta_y <= squared_radius) {
+						if (n < objects.length)
+							objects[n] = object;
+						n++;
+					}
+				}
 			}
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the visible object drawn on a pixel of the viewport. The sprite objects are tested using the alpha masks of their sprites (see
+	 * {@link Sprite#isOpaque(int, int)}) and the string objects using their bounds. When many objects cover the pixel, the one drawn last in the last scene is returned.
+	 * 
+	 * @param x
+	 *           the pixel x-coordinate (viewport coordinates)
+	 * @param y
+	 *           the pixel y-coordinate (viewport coordinates)
+	 * @return the object or null if there is no object on the pixel
+	 */
+	public UIsoObject getObjectAt(int x, int y) {
+		int real_x = this.viewport_offset_x + x, real_y = this.viewport_offset_y + y, best_drawing_position = -2;
+		UIsoObject best_object = null;
 
-			System.out.println(sprite);
-			image = sprite.image;
-			if (this.debug)
-				this.objects_grid_manager.checkObjectLimits(image.getW(), image.getH());
+		this.objects_motion_manager.updateObjects();
 
-			ws_x = nw_x = this.real_coordinates.x - sprite.getAnchorX();
-			ne_y = nw_y = this.real_coordinates.y - sprite.getAnchorY();
-			ne_x = es_x = nw_x + image.getW();
-			ws_y = es_y = nw_y + image.getH();
-		} else {
-			StringObject string_object = (StringObject) object;
-			this.drawer.getStringBounds(string_object.getString(), this.string_bounds, string_object.getFont());
-			if (this.debug)
-				this.objects_grid_manager.checkObjectLimits(this.string_bounds.w, this.string_bounds.h);
-
-			ws_x = nw_x = this.real_coordinates.x - (this.string_bounds.w >> 1);
-			ne_y = nw_y = this.real_coordinates.y - (this.string_bounds.h >> 1);
-			ne_x = es_x = nw_x + this.string_bounds.w;
-			ws_y = es_y = nw_y + this.string_bounds.h;
+		int n_found_objects = this.objects_grid_manager.findObjects(real_x, real_y, real_x, real_y);
+		UIsoObject[] found_objects = this.objects_grid_manager.found_objects;
+		for (int i = 0; i < n_found_objects; i++) {
+			UIsoObject object = found_objects[i];
+			int local_x = real_x - object.bounds_x, local_y = real_y - object.bounds_y;
+
+			if (!object.isVisible() || local_x < 0 || local_x >= object.bounds_w || local_y < 0 || local_y >= object.bounds_h)
+				continue;
+			if (object instanceof SpriteObject) {
+				Sprite sprite = this.getObjectSprite((SpriteObject) object, this.sprites);
+				if (sprite == null || !sprite.isOpaque(local_x, local_y))
+					continue;
+			}
+
+			int drawing_position = this.scene_objects_manager.getDrawingPosition(object);
+			if (drawing_position > best_drawing_position) {
+				best_drawing_position = drawing_position;
+				best_object = object;
+			}
 		}
+		return best_object;
+	}
 
-		nw_cell = this.objects_grid_manager.getObjectsGridCellAndCellCoordinates(nw_x, nw_y, null);
-		ne_cell = this.objects_grid_manager.getObjectsGridCellAndCellCoordinates(ne_x, ne_y, null);
-		ws_cell = this.objects_grid_manager.getObjectsGridCellAndCellCoordinates(ws_x, ws_y, null);
-		es_cell = this.objects_grid_manager.getObjectsGridCellAndCellCoordinates(es_x, es_y, null);
+	/**
+	 * Informs the engine that the appearance of an object (e.g, its sprite or string) has changed. It must be used instead of
+	 * {@link #informObjectMotion(UIsoObject)} when the object appearance cache is being used (see {@link UIsoConfiguration#use_object_appearance_cache}). The cached
+	 * appearance is discarded and the object is updated like a moving object, so it costs the same as {@link #informObjectMotion(UIsoObject)} (and it is deferred in
+	 * the same way).
+	 * 
+	 * @param object
+	 *           the object that has changed
+	 */
+	public void informObjectSizeChange(UIsoObject object) {
+		object.setAppearanceCached(false);
+		this.informObjectMotion(object);
+	}
+
+	/**
+	 * Informs the engine that a {@link Tile} will be drawn differently (e.g, its sprites returned by {@link IDrawer#getTileSprite(Tile, Sprite[])} or its visibility have
+	 * changed) so its area must be redrawn. It must be called after the change. Changes in the tile z-coordinate and slope are detected by the engine. It is only needed
+	 * when the dirty rectangle system (see {@link UIsoConfiguration#use_dirty_rectangle}) or the terrain chunk cache (see
+	 * {@link UIsoConfiguration#terrain_chunk_size}) is being used.
+	 * 
+	 * @param tile
+	 *           the tile that has changed
+	 */
+	public void informTileAppearanceChange(Tile tile) {
+		if (this.terrain_chunk_manager != null)
+			this.terrain_chunk_manager.invalidateTile(tile);
+		if (this.use_dirty_rectangle_system)
+			this.damageTile(tile);
+	}
+
+	/**
+	 * Writes the changed tiles to the file when the tiles are memory-mapped (see {@link UIsoConfiguration#mapped_tiles_file}). Otherwise, it does nothing.
+	 */
+	public void flushTileStorage() {
+		this.map.flush();
+	}
+
+	/**
+	 * Writes the changed tiles and closes the file when the tiles are memory-mapped (see {@link UIsoConfiguration#mapped_tiles_file}). It must be called when the engine
+	 * is not needed anymore, as the file stays open until then. The engine can not be used after it.
+	 */
+	public void closeTileStorage() {
+		this.map.close();
+	}
+
+	/**
+	 * Saves the tiles, the objects and the viewport position in a snapshot file (see {@link #loadSnapshot(String, IUIsoObjectFactory)}).
+	 * 
+	 * @param path
+	 *           the snapshot file. It is replaced if it exists.
+	 * @param object_factory
+	 *           tells the type of each object. The objects without a type are not saved.
+	 * @throws IOException
+	 *            if the file can not be written
+	 */
+	public void saveSnapshot(String path, IUIsoObjectFactory object_factory) throws IOException {
+		this.objects_motion_manager.updateObjects();
 
-		object.removeObjectFromLinkedList(UIsoObject.NW_VERTEX);
-		object.removeObjectFromLinkedList(UIsoObject.NE_VERTEX);
-		object.removeObjectFromLinkedList(UIsoObject.WS_VERTEX);
-		object.removeObjectFromLinkedList(UIsoObject.ES_VERTEX);
+		int n_objects = this.objects_grid_manager.findAllObjects();
+		UIsoObject[] objects = this.objects_grid_manager.found_objects;
+		int[] object_types = new int[n_objects];
+		for (int i = 0; i < n_objects; i++)
+			object_types[i] = object_factory.getObjectType(objects[i]);
 
-		if (nw_cell != null)
-			nw_cell.insertObject(object, UIsoObject.NW_VERTEX);
-		if (ne_cell != null && nw_cell != ne_cell)
-			ne_cell.insertObject(object, UIsoObject.NE_VERTEX);
-		if (es_cell != null && nw_cell != es_cell && ne_cell != es_cell)
-			es_cell.insertObject(object, UIsoObject.ES_VERTEX);
-		if (ws_cell != null && nw_cell != ws_cell && ne_cell != ws_cell && es_cell != ws_cell)
-			ws_cell.insertObject(object, UIsoObject.WS_VERTEX);
+		UIsoSnapshot.save(path, this.map, this.w, this.h, this.tile_max_z, this.viewport_center, objects, n_objects, object_types);
+	}
+
+	/**
+	 * Replaces the tiles and the objects by the ones saved in a snapshot file (see {@link #saveSnapshot(String, IUIsoObjectFactory)}) and scrolls the viewport to the
+	 * saved position. The file is memory-mapped and the tiles are copied in bulk, so the cost does not depend on the tile factory. The map dimensions must be the same.
+	 * The {@link ISimulationLogic} is not informed about the changed tiles. The objects are created before the engine is changed, so the engine is left unchanged if
+	 * the factory throws an exception (e.g. for an unknown type).
+	 * 
+	 * @param path
+	 *           the snapshot file
+	 * @param object_factory
+	 *           creates the objects according to their types
+	 * @return the objects inserted in the engine
+	 * @throws IOException
+	 *            if the file can not be read
+	 * @throws InvalidSnapshotException
+	 *            if the file is not a valid snapshot for this map
+	 */
+	public UIsoObject[] loadSnapshot(String path, IUIsoObjectFactory object_factory) throws IOException, InvalidSnapshotException {
+		UIsoSnapshot snapshot = new UIsoSnapshot(path, this.w, this.h, this.tile_max_z);
+		UIsoObject[] loaded_objects = snapshot.readObjects(object_factory);
+
+		/* Remove the current objects. */
+		this.objects_motion_manager.updateObjects();
+		int n_objects = this.objects_grid_manager.findAllObjects();
+		UIsoObject[] objects = Arrays.copyOf(this.objects_grid_manager.found_objects, n_objects);
+		for (int i = 0; i < n_objects; i++)
+			this.removeObject(objects[i]);
+
+		/* The heights of the loaded tiles are not known. */
+		snapshot.readTiles(this.map);
+		this.terraform_planner.invalidate();
+		this.highest_tile_z = this.tile_max_z;
+		this.tile_spans_outdated = true;
+		if (this.terrain_chunk_manager != null)
+			this.terrain_chunk_manager.invalidateAll();
+
+		this.point.x = snapshot.viewport_center_x;
+		this.point.y = snapshot.viewport_center_y;
+		this.point.z = 0;
+		this.internalScrollToCoordinate(this.point, false);
+		if (this.use_dirty_rectangle_system)
+			this.scene_rectangle_manager.invalidateAll();
+
+		this.informObjectsMotion(loaded_objects, loaded_objects.length);
+		return loaded_objects;
+	}
+
+	/**
+	 * Informs the engine that an object has moved or that it will be drawn differently (e.g, its sprite has changed). When the dirty rectangle system is being used, it
+	 * must be called after every change in the object appearance (including its visibility). When the deferred object motion is being used (see
+	 * {@link UIsoConfiguration#use_deferred_object_motion}), the object is only updated at the beginning of the next {@link #draw()}.
+	 * 
+	 * @param object
+	 *           the object that has changed
+	 */
+	public void informObjectMotion(UIsoObject object) {
+		if (this.objects_motion_manager.isDeferred()) {
+			this.objects_motion_manager.addObject(object);
+			return;
+		}
+		this.computeObjectBounds(object, this.object_bounds, 0, this.virtual_coordinates, this.real_coordinates, this.sprites, this.string_bounds);
+		this.applyObjectBounds(object, this.object_bounds, 0);
+	}
+
+	/**
+	 * The same as calling {@link #informObjectMotion(UIsoObject)} for each object, but each object is updated only once even if it appears many times and the positions
+	 * and images of big batches can be computed in parallel (see {@link UIsoConfiguration#parallel_object_motion_threshold}).
+	 * 
+	 * @param objects
+	 *           the objects that have changed
+	 * @param n_objects
+	 *           the number of objects (starting at the first position) that must be considered
+	 */
+	public void informObjectsMotion(UIsoObject[] objects, int n_objects) {
+		for (int i = 0; i < n_objects; i++)
+			this.objects_motion_manager.addObject(objects[i]);
+		if (!this.objects_motion_manager.isDeferred())
+			this.objects_motion_manager.updateObjects();
 	}
 
 	public void removeObject(UIsoObject object) {
-		object.removeObjectFromLinkedList(UIsoObject.NW_VERTEX);
-		object.removeObjectFromLinkedList(UIsoObject.NE_VERTEX);
-		object.removeObjectFromLinkedList(UIsoObject.WS_VERTEX);
-		object.removeObjectFromLinkedList(UIsoObject.ES_VERTEX);
+		if (this.use_dirty_rectangle_system)
+			this.damageObject(object);
+		object.bounds_w = 0;
+		object.setMotionPending(false);
+		object.setAppearanceCached(false);
+		this.objects_tile_index.removeObject(object);
+		if (this.visible_objects_set != null)
+			this.visible_objects_set.removeObject(object);
+		this.objects_grid_manager.removeObject(object);
 	}
 
 	/**
@@ -641,52 +957,134 @@ public class UIsoEngine {
 	}
 
 	public void setTileZ(Tile tile, int z) {
-		int new_z = clamp(0, this.tile_max_z, z), x = tile.getX(), y = tile.getY();
+		this.terraform_tiles[0] = tile;
+		this.terraform_z[0] = z;
+		this.setTilesZ(this.terraform_tiles, this.terraform_z, 1);
+	}
 
-		this.n_affected_tiles = 0;
-		if (tile.getZ() != new_z) {
-			this.addTileToAffectedList(tile);
-			this.internalSetTileZ(tile, new_z);
-		}
-		for (int i = 0; i < Tile.N_NEIGHBORS; i++) {
-			int neighbour_x = x + Tile.neighbour_x_offset[i];
-			int neighbour_y = y + Tile.neighbour_y_offset[i];
-
-			if (0 <= neighbour_x && neighbour_x <= this.real_w && 0 <= neighbour_y && neighbour_y <= this.real_h) {
-				Tile neighbour_tile = this.map.tiles[neighbour_y][neighbour_x];
-				int difference = (new_z - neighbour_tile.getZ());
-				boolean increasing = difference > 0;
-
-				if (difference >= 2 && increasing) {
-					this.recursiveSetTileZ(neighbour_tile, new_z - 1, increasing, Tile.neighbour_direction[i], false);
-				} else if (difference <= -2 && !increasing) {
-					this.recursiveSetTileZ(neighbour_tile, new_z + 1, increasing, Tile.neighbour_direction[i], false);
-				}
+	/**
+	 * The same as calling {@link #setTileZ(Tile, int)} for each tile, but the cascade of changes is computed once for all of them and each affected tile is changed only
+	 * once. If {@link #canSetTilesZ(Tile[], int[], int)} has been called with the same arguments and the terrain has not changed since then, its plan is applied.
+	 * 
+	 * @param tiles
+	 *           the tiles that will have their z-coordinates changed
+	 * @param z
+	 *           the new z-coordinate of each tile. The values are clamped to [0, {@code tile_max_z}].
+	 * @param n_tiles
+	 *           the number of tiles
+	 */
+	public void setTilesZ(Tile[] tiles, int[] z, int n_tiles) {
+		int n_planned_tiles;
+
+		this.terraform_planner.plan(tiles, z, n_tiles);
+		n_planned_tiles = this.terraform_planner.getNumberOfPlannedTiles();
+		for (int i = 0; i < n_planned_tiles; i++) {
+			int tile_x = this.terraform_planner.getPlannedTileX(i), tile_y = this.terraform_planner.getPlannedTileY(i), tile_z = this.terraform_planner.getPlannedTileZ(i);
+			Tile tile = this.map.getTile(tile_x, tile_y);
+
+			if (tile.getZ() != tile_z) {
+				this.internalSetTileZ(tile, tile_z);
+				this.markSlopesToCorrect(tile);
 			}
 		}
 
-		for (int i = 0; i < this.n_affected_tiles; i++) {
-			tile = this.affected_tiles[i];
+		/* The planned tiles that have not changed (if any) only cost some useless checks. */
+		for (int i = 0; i < n_planned_tiles; i++) {
+			int tile_x = this.terraform_planner.getPlannedTileX(i), tile_y = this.terraform_planner.getPlannedTileY(i);
+
+			if (this.terrain_chunk_manager != null)
+				this.terrain_chunk_manager.invalidateTile(this.map.getTileView(tile_x, tile_y));
 			for (int j = 3; j <= 5; j++) {
-				int neighbour_x = tile.getX() + Tile.neighbour_x_offset[j];
-				int neighbour_y = tile.getY() + Tile.neighbour_y_offset[j];
+				int neighbour_x = tile_x + Tile.neighbour_x_offset[j];
+				int neighbour_y = tile_y + Tile.neighbour_y_offset[j];
 				if (neighbour_x < 0 || neighbour_y < 0)
 					continue;
-				this.updateSlope(this.map.tiles[neighbour_y][neighbour_x]);
+				this.updateSlope(this.map.getTileView(neighbour_x, neighbour_y));
+			}
+			this.updateSlope(this.map.getTileView(tile_x, tile_y));
+		}
+	}
+
+	/**
+	 * Sets the z-coordinate of all the tiles at once. It is much faster than calling {@link #setTileZ(Tile, int)} for each tile: the neighbors constraint (the
+	 * z-coordinates of neighbor tiles can not differ by more than 1) is enforced by raising the tiles around the higher ones in two linear passes, every slope is
+	 * computed in one sweep and the {@link ISimulationLogic} is informed once if it is an {@link IBulkSimulationLogic} (tile by tile otherwise). The
+	 * result is the same as setting the tiles in ascending z-coordinate order, but {@link ISimulationLogic#canSetTileZ(UIsoEngine, Tile, int)} is not called.
+	 * 
+	 * @param heights
+	 *           the z-coordinate of each tile in row order ({@code heights[y * w + x]}). The values are clamped to [0, {@code tile_max_z}].
+	 * @throws IllegalArgumentException
+	 *            if there is not one height per tile
+	 */
+	public void setTilesZ(int[] heights) throws IllegalArgumentException {
+		if (heights.length != this.w * this.h)
+			throw new IllegalArgumentException("There must be one height per tile.");
+
+		int rows = this.map.rows, row_length = this.map.row_length;
+		int[] z = new int[rows * row_length];
+		for (int y = 0; y < this.h; y++)
+			for (int x = 0; x < this.w; x++)
+				z[(y + this.tile_max_z) * row_length + x + this.tile_max_z] = clamp(0, this.tile_max_z, heights[y * this.w + x]);
+
+		/* Each tile height becomes the maximum of (height - distance) over all tiles (Chebyshev distance): a forward and a backward raster pass are enough. */
+		for (int y = 0; y < rows; y++) {
+			for (int x = 0, i = y * row_length; x < row_length; x++, i++) {
+				if (x > 0)
+					z[i] = Math.max(z[i], z[i - 1] - 1);
+				if (y > 0) {
+					z[i] = Math.max(z[i], z[i - row_length] - 1);
+					if (x > 0)
+						z[i] = Math.max(z[i], z[i - row_length - 1] - 1);
+					if (x < row_length - 1)
+						z[i] = Math.max(z[i], z[i - row_length + 1] - 1);
+				}
 			}
-			this.updateSlope(tile);
 		}
+		for (int y = rows - 1; y >= 0; y--) {
+			for (int x = row_length - 1, i = y * row_length + x; x >= 0; x--, i--) {
+				if (x < row_length - 1)
+					z[i] = Math.max(z[i], z[i + 1] - 1);
+				if (y < rows - 1) {
+					z[i] = Math.max(z[i], z[i + row_length] - 1);
+					if (x < row_length - 1)
+						z[i] = Math.max(z[i], z[i + row_length + 1] - 1);
+					if (x > 0)
+						z[i] = Math.max(z[i], z[i + row_length - 1] - 1);
+				}
+			}
+		}
+
+		this.applyTilesZ(z);
+	}
+
+	/**
+	 * The same as {@link #setTilesZ(int[])} but the heights come from a grayscale image: black is 0 and white is {@code tile_max_z}.
+	 * 
+	 * @param pixels
+	 *           the RGB pixels of the image ({@code pixels[y * w + x]} is the pixel of the tile (x, y))
+	 * @throws IllegalArgumentException
+	 *            if there is not one pixel per tile
+	 */
+	public void setTilesZFromGrayscale(int[] pixels) throws IllegalArgumentException {
+		int[] heights = new int[pixels.length];
+
+		for (int i = 0; i < pixels.length; i++) {
+			int pixel = pixels[i], gray = (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8;
+			heights[i] = (gray * this.tile_max_z + 127) / 255;
+		}
+		this.setTilesZ(heights);
 	}
 
 	/* Package: */
 	boolean debug;
 	IDrawer drawer;
+	IChunkDrawer chunk_drawer; /* The drawer, if it can draw on off-screen images. */
 	Rectangle string_bounds;
 	Point real_coordinates, virtual_coordinates; /* Employed for various mappings. */
 	Sprite[] sprites;
 	int real_w, real_h; /* They are 1-based indices. */
 	int viewport_offset_x, viewport_offset_y; /* Real coordinates of upper left corner. It always reflects the same information of viewport_center. */
-	int virtual_world_tile_size, slope_height, tile_h, tile_w, w, h, tile_max_z, n_affected_tiles, viewport_w_half, viewport_h_half, viewport_w, viewport_h;
+	int virtual_world_tile_size, slope_height, tile_h, tile_w, w, h, tile_max_z, viewport_w_half, viewport_h_half, viewport_w, viewport_h;
 
 	final static void toRealCoordinates(Point virtual_coordinates, Point real_coordinates) {
 		assert (virtual_coordinates.z >= 0);
@@ -701,6 +1099,104 @@ public class UIsoEngine {
 		virtual_coordinates.z = 0;
 	}
 
+	/**
+	 * Computes the area (real coordinates) covered by the object and stores it in bounds[i ... i + 3] (x, y, w, h). The width is -1 when the object has no image. Only the
+	 * informed buffers are written, so it can be called by several threads at the same time.
+	 */
+	void computeObjectBounds(UIsoObject object, int[] bounds, int i, Point virtual_coordinates, Point real_coordinates, Sprite[] sprites, Rectangle string_bounds) {
+		virtual_coordinates.x = object.getX() + this.tile_max_z * this.virtual_world_tile_size;
+		virtual_coordinates.y = object.getY() + this.tile_max_z * this.virtual_world_tile_size;
+		virtual_coordinates.z = object.getZ();
+		toRealCoordinates(virtual_coordinates, real_coordinates);
+
+		if (object instanceof SpriteObject) {
+			Sprite sprite = this.getObjectSprite((SpriteObject) object, sprites);
+
+			if (sprite == null) {
+				bounds[i + 2] = -1;
+				return;
+			}
+
+			bounds[i] = real_coordinates.x - sprite.getAnchorX();
+			bounds[i + 1] = real_coordinates.y - sprite.getAnchorY();
+			bounds[i + 2] = sprite.image.getW();
+			bounds[i + 3] = sprite.image.getH();
+		} else {
+			this.getStringObjectBounds((StringObject) object, string_bounds);
+
+			bounds[i] = real_coordinates.x - (string_bounds.w >> 1);
+			bounds[i + 1] = real_coordinates.y - (string_bounds.h >> 1);
+			bounds[i + 2] = string_bounds.w;
+			bounds[i + 3] = string_bounds.h;
+		}
+	}
+
+	/**
+	 * @return the first sprite of the object (see {@link IDrawer#getObjectSprite(SpriteObject, Sprite[])}). When the object appearance cache is being used, the drawer is
+	 *         consulted only once.
+	 */
+	Sprite getObjectSprite(SpriteObject object, Sprite[] sprites) {
+		if (!this.use_object_appearance_cache) {
+			this.drawer.getObjectSprite(object, sprites);
+			return sprites[0];
+		}
+
+		if (!object.isAppearanceCached()) {
+			this.drawer.getObjectSprite(object, sprites);
+			object.cached_sprite = sprites[0];
+			object.setAppearanceCached(true);
+		}
+		return object.cached_sprite;
+	}
+
+	/**
+	 * The same as {@link IDrawer#getStringBounds(String, Rectangle, Object)}, but the drawer is consulted only once when the object appearance cache is being used.
+	 */
+	void getStringObjectBounds(StringObject object, Rectangle string_bounds) {
+		if (!this.use_object_appearance_cache) {
+			this.drawer.getStringBounds(object.getString(), string_bounds, object.getFont());
+			return;
+		}
+
+		if (!object.isAppearanceCached()) {
+			this.drawer.getStringBounds(object.getString(), string_bounds, object.getFont());
+			object.cached_w = string_bounds.w;
+			object.cached_h = string_bounds.h;
+			object.setAppearanceCached(true);
+		}
+		string_bounds.w = object.cached_w;
+		string_bounds.h = object.cached_h;
+	}
+
+	/**
+	 * Moves the object to the area computed by {@link #computeObjectBounds(UIsoObject, int[], int, Point, Point, Sprite[], Rectangle)}.
+	 */
+	void applyObjectBounds(UIsoObject object, int[] bounds, int i) {
+		this.objects_grid_manager.acquireSlot(object);
+		this.objects_tile_index.updateObject(object);
+
+		/* Dirty rectangle system: the area where the object was must be redrawn. */
+		if (this.use_dirty_rectangle_system)
+			this.damageObject(object);
+
+		if (bounds[i + 2] < 0) {
+			object.bounds_w = 0;
+			if (this.visible_objects_set != null)
+				this.visible_objects_set.updateObject(object);
+			return;
+		}
+		object.bounds_x = bounds[i];
+		object.bounds_y = bounds[i + 1];
+		object.bounds_w = bounds[i + 2];
+		object.bounds_h = bounds[i + 3];
+		if (this.use_dirty_rectangle_system)
+			this.damageObject(object);
+
+		this.objects_grid_manager.insertObject(object, object.bounds_x, object.bounds_y, object.bounds_x + object.bounds_w, object.bounds_y + object.bounds_h);
+		if (this.visible_objects_set != null)
+			this.visible_objects_set.updateObject(object);
+	}
+
 	void drawPoint(Point virtual_coordinates) {
 		toRealCoordinates(virtual_coordinates, this.real_coordinates);
 		this.real_coordinates.x += (-this.viewport_offset_x);
@@ -708,62 +1204,74 @@ public class UIsoEngine {
 		this.drawer.drawLine(this.real_coordinates.x, this.real_coordinates.y, this.real_coordinates.x + 1, this.real_coordinates.y);
 	}
 
+	/**
+	 * Updates the area around the tile position that can be covered by its sprites.
+	 */
+	void updateTileSpritesArea(Sprite sprite) {
+		UIsoImage image = sprite.image;
+
+		if (this.tile_sprites_left < sprite.anchor_x) {
+			this.tile_sprites_left = sprite.anchor_x;
+			this.tile_spans_outdated = true;
+		}
+		if (this.tile_sprites_right < image.getW() - sprite.anchor_x) {
+			this.tile_sprites_right = image.getW() - sprite.anchor_x;
+			this.tile_spans_outdated = true;
+		}
+		if (this.tile_sprites_above < sprite.anchor_y) {
+			this.tile_sprites_above = sprite.anchor_y;
+			this.tile_spans_outdated = true;
+		}
+		if (this.tile_sprites_below < image.getH() - sprite.anchor_y) {
+			this.tile_sprites_below = image.getH() - sprite.anchor_y;
+			this.tile_spans_outdated = true;
+		}
+	}
+
 	/* Private: */
-	/* Used to iterate through neighbors during the height adjustment without repeat the same tile. */
 	private final static int CROSS_SIZE = 12;
-	private final static byte n_neighbours[] = {3, 3, 3, 3, 1, 1, 1, 1};
-	//@formatter:off
-	private final static byte neighbour_direction[][] = {{Tile.DIRECTION_N, Tile.DIRECTION_NW, Tile.DIRECTION_NE} /* N */,
-			{Tile.DIRECTION_S, Tile.DIRECTION_SE, Tile.DIRECTION_SW}, /* S */
-			{Tile.DIRECTION_W, Tile.DIRECTION_NW, Tile.DIRECTION_SW}, /* W */
-			{Tile.DIRECTION_E, Tile.DIRECTION_SE, Tile.DIRECTION_NE}, /* E */
-			{Tile.DIRECTION_NE}, /* NE */
-			{Tile.DIRECTION_SE}, /* SE */
-			{Tile.DIRECTION_SW}, /* SW */
-			{Tile.DIRECTION_NW} /* NW */
-	};
-	private final static byte neighbour_x_offset[][] = {{-1, -1, 0} /* N */, 
-			{1, 1, 0}, /* S */
-			{-1, -1, 0}, /* W */
-			{1, 1, 0}, /* E */
-			{0}, /* NE */
-			{1}, /* SE */
-			{0}, /* SW */
-			{-1} /* NW */
-	};
-	private final static byte neighbour_y_offset[][] = {{-1, 0, -1}, /* N */
-			{1, 0, 1}, /* S */
-			{1, 0, 1}, /* W */
-			{-1, 0, -1}, /* E */
-			{-1}, /* NE */
-			{0}, /* SE */
-			{1}, /* SW */
-			{0} /* NW */
-	};
-	//@formatter:on
-
-	private boolean use_dirty_rectangle_system;
+
+	private boolean use_dirty_rectangle_system, use_scroll_blit, use_object_appearance_cache;
+	private int last_viewport_offset_x, last_viewport_offset_y; /* Viewport position when the last scene was drawn. */
+	/*
+	 * The area around the tile position (real coordinates) that can be covered by its sprites. It starts from the configured maximum tile sprite size and grows when
+	 * bigger sprites are drawn.
+	 */
+	private int tile_sprites_left, tile_sprites_right, tile_sprites_above, tile_sprites_below;
+	private boolean tile_spans_outdated;
+	private int highest_tile_z; /* No tile has ever had a bigger z-coordinate. */
+	private int tile_spans_viewport_offset_x, tile_spans_viewport_offset_y; /* Viewport position used to compute viewport_tile_spans. */
+	private VisibleTileSpans viewport_tile_spans, region_tile_spans;
+	/* Scene profile (nanoseconds). */
+	private long scene_gather_time, scene_sort_time, scene_objects_draw_time;
+	private SceneRectangleManager scene_rectangle_manager;
+	private TerrainChunkManager terrain_chunk_manager;
 	private UIsoMap map;
 	private MapingHelper maping_helper;
 	private ObjectsGridManager objects_grid_manager;
+	private ObjectsTileIndex objects_tile_index;
+	private VisibleObjectsSet visible_objects_set;
+	private ObjectsMotionManager objects_motion_manager;
+	private int[] object_bounds = new int[4]; /* Used by informObjectMotion. */
 	private Point point; /* Available for offset and other calculations. */
-	private Point viewport_point; /* Used to draw the scene. */
 	private Point viewport_center; /* Virtual coordinates. */
 	private ISimulationLogic simulation_logic;
+	private IBulkSimulationLogic bulk_simulation_logic; /* The simulation_logic, if it can be informed about many tiles at once. */
 	private SceneObjectsManager scene_objects_manager;
-	private Tile[] affected_tiles;
-
-	private void addTileToAffectedList(Tile tile) {
-		assert (this.n_affected_tiles < this.affected_tiles.length);
-
-		this.affected_tiles[this.n_affected_tiles++] = tile;
+	private TerraformPlanner terraform_planner;
+	private Tile[] terraform_tiles = new Tile[1]; /* Used by canSetTileZ and setTileZ. */
+	private int[] terraform_z = new int[1];
 
+	/**
+	 * Marks the slopes that depend on the tile z-coordinate (the tile slope and the slopes of the 3 tiles before it) to be corrected by {@link #updateSlope(Tile)}.
+	 */
+	private void markSlopesToCorrect(Tile tile) {
 		for (int i = 3; i <= 5; i++) {
 			int neighbour_x = tile.getX() + Tile.neighbour_x_offset[i];
 			int neighbour_y = tile.getY() + Tile.neighbour_y_offset[i];
 			if (neighbour_x < 0 || neighbour_y < 0)
 				continue;
-			this.map.tiles[neighbour_y][neighbour_x].setMustCorrectTheSlope(true);
+			this.map.getTileView(neighbour_x, neighbour_y).setMustCorrectTheSlope(true);
 		}
 		tile.setMustCorrectTheSlope(true);
 	}
@@ -773,28 +1281,41 @@ public class UIsoEngine {
 		this.drawer.drawLine(this.viewport_w_half, this.viewport_h_half - (CROSS_SIZE >> 1), this.viewport_w_half, this.viewport_h_half + (CROSS_SIZE >> 1));
 	}
 
+	private void damageObject(UIsoObject object) {
+		if (object.bounds_w != 0)
+			this.scene_rectangle_manager.addRectangle(object.bounds_x, object.bounds_y, object.bounds_w, object.bounds_h);
+	}
+
+	private void damageTile(Tile tile) {
+		int i = 0;
+
+		/* The current sprites can cover an area that has not been considered yet. */
+		this.drawer.getTileSprite(tile, this.sprites);
+		while (this.sprites[i] != null)
+			this.updateTileSpritesArea(this.sprites[i++]);
+
+		this.scene_rectangle_manager.addRectangle(this.map.getTileRealX(tile) - this.tile_sprites_left, this.map.getTileRealY(tile) - this.tile_sprites_above,
+				this.tile_sprites_left + this.tile_sprites_right, this.tile_sprites_above + this.tile_sprites_below);
+	}
+
 	private void drawTile(Tile tile) {
 		int i = 0;
+		/* Tile position relative to the viewport. */
+		int tile_x = this.map.getTileRealX(tile) - this.viewport_offset_x, tile_y = this.map.getTileRealY(tile) - this.viewport_offset_y;
 		this.drawer.getTileSprite(tile, this.sprites);
 
 		while (this.sprites[i] != null) {
 			Sprite sprite = this.sprites[i++];
 			UIsoImage image = sprite.image;
+			int x = tile_x - sprite.anchor_x, y = tile_y - sprite.anchor_y;
 
-			this.virtual_coordinates.x = (tile.getX() * this.virtual_world_tile_size);
-			this.virtual_coordinates.y = (tile.getY() * this.virtual_world_tile_size);
-			this.virtual_coordinates.z = (tile.getZ() * this.slope_height);
-
-			toRealCoordinates(this.virtual_coordinates, this.real_coordinates);
-			this.real_coordinates.x += (-sprite.getAnchorX() - this.viewport_offset_x);
-			this.real_coordinates.y += (-sprite.getAnchorY() - this.viewport_offset_y);
+			this.updateTileSpritesArea(sprite);
 
 			/* Check the rectangles intersection. */
-			if (this.real_coordinates.y + image.getH() < 0 || this.real_coordinates.y >= this.viewport_h || this.real_coordinates.x + image.getW() < 0
-					|| this.real_coordinates.x >= this.viewport_w)
+			if (y + image.getH() < 0 || y >= this.viewport_h || x + image.getW() < 0 || x >= this.viewport_w)
 				continue;
 
-			this.drawer.drawImage(this.real_coordinates.x, this.real_coordinates.y, image);
+			this.drawer.drawImage(x, y, image);
 		}
 
 		/* Debug: */
@@ -819,43 +1340,98 @@ public class UIsoEngine {
 	}
 
 
+	/**
+	 * Draws the tiles that intersect the informed rectangle (viewport coordinates).
+	 */
+	private void drawTiles(int x, int y, int w, int h) {
+		VisibleTileSpans tile_spans;
+
+		/* The viewport spans only change when the viewport is scrolled. */
+		if (x == 0 && y == 0 && w == this.viewport_w && h == this.viewport_h) {
+			tile_spans = this.viewport_tile_spans;
+			if (this.tile_spans_outdated || this.tile_spans_viewport_offset_x != this.viewport_offset_x || this.tile_spans_viewport_offset_y != this.viewport_offset_y) {
+				this.computeTileSpans(tile_spans, x, y, w, h);
+				this.tile_spans_outdated = false;
+				this.tile_spans_viewport_offset_x = this.viewport_offset_x;
+				this.tile_spans_viewport_offset_y = this.viewport_offset_y;
+			}
+		} else {
+			tile_spans = this.region_tile_spans;
+			this.computeTileSpans(tile_spans, x, y, w, h);
+		}
+
+		if (this.terrain_chunk_manager != null) {
+			int min_x = Integer.MAX_VALUE, max_x = Integer.MIN_VALUE;
+			for (int tile_y = tile_spans.min_y; tile_y <= tile_spans.max_y; tile_y++) {
+				min_x = Math.min(min_x, tile_spans.min_x[tile_y]);
+				max_x = Math.max(max_x, tile_spans.max_x[tile_y]);
+			}
+			if (min_x <= max_x)
+				this.terrain_chunk_manager.drawChunks(min_x, tile_spans.min_y, max_x, tile_spans.max_y, x, y, w, h);
+			return;
+		}
+
+		for (int tile_y = tile_spans.min_y; tile_y <= tile_spans.max_y; tile_y++) {
+			for (int tile_x = tile_spans.min_x[tile_y], max_x = tile_spans.max_x[tile_y]; tile_x <= max_x; tile_x++) {
+				Tile tile = this.map.getTileView(tile_x, tile_y);
+				if (tile.isVisible())
+					this.drawTile(tile);
+			}
+		}
+	}
+
+	private void computeTileSpans(VisibleTileSpans tile_spans, int x, int y, int w, int h) {
+		tile_spans.compute(this.viewport_offset_x + x, this.viewport_offset_y + y, this.viewport_offset_x + x + w, this.viewport_offset_y + y + h, this.tile_sprites_left,
+				this.tile_sprites_right, this.tile_sprites_above, this.tile_sprites_below, this.highest_tile_z);
+	}
+
 	public void drawObjects() {
-		int min_x, min_y, max_x, max_y;
-		UIsoObjectsGridCell objects_grid_cell;
+		this.gatherObjects();
+		this.drawSceneObjects(0, 0, this.viewport_w, this.viewport_h);
+	}
+
+	private void drawSceneObjects(int x, int y, int w, int h) {
+		long start_time = System.nanoTime();
+		this.scene_objects_manager.drawSceneObjects(x, y, w, h);
+		this.scene_objects_draw_time += System.nanoTime() - start_time;
+	}
+
+	/**
+	 * Inserts in the scene the objects that are inside the viewport and sorts them.
+	 */
+	private void gatherObjects() {
+		long start_time = System.nanoTime(), sort_start_time;
 
 		this.scene_objects_manager.startScene();
 
-		objects_grid_cell = this.objects_grid_manager.getObjectsGridCellAndCellCoordinates(this.viewport_offset_x, this.viewport_offset_y, this.point);
-		assert (objects_grid_cell != null);
-		min_x = this.point.x;
-		min_y = this.point.y;
-
-		objects_grid_cell =
-				this.objects_grid_manager.getObjectsGridCellAndCellCoordinates(this.viewport_offset_x + this.viewport_w - 1, this.viewport_offset_y + this.viewport_h - 1,
-						this.point);
-		assert (objects_grid_cell != null);
-		max_x = this.point.x;
-		max_y = this.point.y;
-
-		for (int y = min_y; y <= max_y; y++) {
-			for (int x = min_x; x <= max_x; x++) {
-				UIsoObject object;
-				objects_grid_cell = this.objects_grid_manager.getObjectsGridCell(x, y);
-				assert (objects_grid_cell != null);
-				int vertex = 0, next_vertex = 0;
-
-				object = objects_grid_cell.isometric_engine_object;
-				if (object != null)
-					vertex = object.getVertexFromPreviousElement(objects_grid_cell);
-				while (object != null) {
-					this.scene_objects_manager.insertObjectInScene(object);
-					next_vertex = object.getVertexOfNextElementThatContinuesTheListInVertex(vertex);
-					object = (UIsoObject) object.getNextElement(vertex);
-					vertex = next_vertex;
-				}
-			}
+		int n;
+		UIsoObject[] objects;
+		if (this.visible_objects_set != null) {
+			n = this.visible_objects_set.update(this.viewport_offset_x, this.viewport_offset_y);
+			objects = this.visible_objects_set.objects;
+		} else {
+			n = this.objects_grid_manager.findObjects(this.viewport_offset_x, this.viewport_offset_y, this.viewport_offset_x + this.viewport_w - 1, this.viewport_offset_y
+					+ this.viewport_h - 1);
+			objects = this.objects_grid_manager.found_objects;
+		}
+		for (int i = 0; i < n; i++)
+			this.scene_objects_manager.insertObjectInScene(objects[i]);
+
+		sort_start_time = System.nanoTime();
+		this.scene_gather_time = sort_start_time - start_time;
+		this.scene_objects_manager.sortSceneObjects();
+		this.scene_sort_time = System.nanoTime() - sort_start_time;
+	}
+
+	/**
+	 * Converts a virtual coordinate (x or y) to the tile coordinate used by {@link #getTileX(UIsoObject)} and {@link #getTileY(UIsoObject)}.
+	 */
+	private int toTileCoordinate(int v) {
+		if (v >= 0) {
+			return v / this.virtual_world_tile_size;
+		} else {
+			return (v / this.virtual_world_tile_size) - 1;
 		}
-		this.scene_objects_manager.drawSceneObjects();
 	}
 
 	private boolean internalCanSetTileZ(Tile tile, int z) {
@@ -938,8 +1514,9 @@ public class UIsoEngine {
 				n_z = 0;
 				slope_index = 0;
 			} else {
-				n_z = this.map.tiles[tile_y][tile_x].getZ();
-				slope_index = this.map.tiles[tile_y][tile_x].getSlopeIndex();
+				Tile tile = this.map.getTileView(tile_x, tile_y);
+				n_z = tile.getZ();
+				slope_index = tile.getSlopeIndex();
 			}
 			min_z = n_z + Tile.min_z_difference_relative_to_tile_z[slope_index];
 
@@ -992,7 +1569,7 @@ public class UIsoEngine {
 
 		/* If the tile is not inside the map, the {@code fine_coordinates} are meaningless. */
 		if (fine_coordinates != null && this.tile_position_relative_map_polygon == UIsoConstants.INSIDE_POLYGON) {
-			Tile tile = this.map.tiles[tile_y][tile_x];
+			Tile tile = this.map.getTile(tile_x, tile_y);
 			int r_x = this.point.x - (this.tile_w >> 1);
 			int r_y = this.point.y + (min_z + Tile.corner_n_z_relative_to_min_z[slope_index]) * this.slope_height;
 			float f_v_x = 0, f_v_y = 0, f_v_z = 0;
@@ -1145,47 +1722,101 @@ public class UIsoEngine {
 			fine_coordinates.z = UIsoEngine.clamp(0, this.slope_height, MathUtils.round(f_v_z));
 		}
 
-		return this.map.tiles[tile_y][tile_x];
+		return this.map.getTile(tile_x, tile_y);
+	}
+
+	/**
+	 * Sets the z-coordinates computed by {@link #setTilesZ(int[])} (all the tiles, border included, in row order), recomputes every slope in one sweep and informs the
+	 * changed area (or each changed tile, if the simulation logic is not an {@link IBulkSimulationLogic}).
+	 */
+	private void applyTilesZ(int[] z) {
+		int row_length = this.map.row_length, highest_z = 0;
+		int min_x = Integer.MAX_VALUE, min_y = Integer.MAX_VALUE, max_x = Integer.MIN_VALUE, max_y = Integer.MIN_VALUE;
+
+		for (int y = 0; y <= this.real_h + 1; y++) {
+			for (int x = 0, i = y * row_length; x <= this.real_w + 1; x++, i++) {
+				Tile tile = this.map.getTileView(x, y);
+				highest_z = Math.max(highest_z, z[i]);
+				if (tile.getZ() == z[i])
+					continue;
+				int old_z = tile.getZ();
+				tile.setZ(z[i]);
+				this.map.updateTileRealPosition(tile);
+				if (this.bulk_simulation_logic == null && this.isUserTile(x, y))
+					this.simulation_logic.informTileZUpdate(this, this.map.getTile(x, y), old_z);
+				min_x = Math.min(min_x, x);
+				min_y = Math.min(min_y, y);
+				max_x = Math.max(max_x, x);
+				max_y = Math.max(max_y, y);
+			}
+		}
+		this.terraform_planner.invalidate();
+
+		/* The slope of a tile depends on its z-coordinate and on the z-coordinates of the tiles after it. */
+		for (int y = 0; y <= this.real_h; y++) {
+			for (int x = 0, i = y * row_length; x <= this.real_w; x++, i++) {
+				int n = z[i], w = z[i + 1], e = z[i + row_length], s = z[i + row_length + 1];
+				int highest = Math.max(Math.max(n, w), Math.max(e, s)), slope = Tile.FLAT;
+
+				if (n != w || n != e || n != s)
+					slope = (n == highest ? Tile.CORNER_N : 0) | (w == highest ? Tile.CORNER_W : 0) | (e == highest ? Tile.CORNER_E : 0) | (s == highest ? Tile.CORNER_S : 0);
+
+				Tile tile = this.map.getTileView(x, y);
+				if (tile.getSlope() == slope)
+					continue;
+				int old_slope = tile.getSlope();
+				tile.setSlope(slope);
+				if (this.bulk_simulation_logic == null && tile.isVisible())
+					this.simulation_logic.informTileSlopeUpdate(this, this.map.getTile(x, y), old_slope);
+				min_x = Math.min(min_x, x);
+				min_y = Math.min(min_y, y);
+				max_x = Math.max(max_x, x);
+				max_y = Math.max(max_y, y);
+			}
+		}
+
+		if (highest_z > this.highest_tile_z) {
+			this.highest_tile_z = highest_z;
+			this.tile_spans_outdated = true;
+		}
+		if (this.terrain_chunk_manager != null)
+			this.terrain_chunk_manager.invalidateAll();
+		if (this.use_dirty_rectangle_system)
+			this.scene_rectangle_manager.invalidateAll();
+
+		/* Only the changes in the user tiles are informed. */
+		min_x = Math.max(min_x, this.tile_max_z) - this.tile_max_z;
+		min_y = Math.max(min_y, this.tile_max_z) - this.tile_max_z;
+		max_x = Math.min(max_x, this.tile_max_z + this.w - 1) - this.tile_max_z;
+		max_y = Math.min(max_y, this.tile_max_z + this.h - 1) - this.tile_max_z;
+		if (this.bulk_simulation_logic != null && min_x <= max_x && min_y <= max_y)
+			this.bulk_simulation_logic.informTilesUpdate(this, min_x, min_y, max_x, max_y);
 	}
 
 	private void internalSetTileZ(Tile tile, int z) {
 		assert (z != tile.getZ());
 
 		int old_z = tile.getZ(), x = tile.getX(), y = tile.getY();
+		if (this.use_dirty_rectangle_system && tile.isVisible())
+			this.damageTile(tile);
 		tile.setZ(z);
-		if (this.tile_max_z <= x && x < this.tile_max_z + this.w && this.tile_max_z <= y && y < this.tile_max_z + this.h)
+		this.map.updateTileRealPosition(tile);
+		this.terraform_planner.invalidate();
+		if (z > this.highest_tile_z) {
+			this.highest_tile_z = z;
+			this.tile_spans_outdated = true;
+		}
+		if (this.use_dirty_rectangle_system && tile.isVisible())
+			this.damageTile(tile);
+		if (this.isUserTile(x, y))
 			this.simulation_logic.informTileZUpdate(this, tile, old_z);
 	}
 
-	private boolean recursiveSetTileZ(Tile tile, int z, boolean increasing, int direction, boolean test_mode) {
-		boolean can_set_z = true;
-		int difference, new_z = clamp(0, this.tile_max_z, z), x = tile.getX(), y = tile.getY();
-
-		if (new_z == tile.getZ())
-			return true;
-		else if (!test_mode)
-			this.internalSetTileZ(tile, new_z);
-		else if (!this.internalCanSetTileZ(tile, new_z))
-			return false;
-
-		for (int i = 0; i < n_neighbours[direction] && can_set_z; i++) {
-			int neighbour_x = x + neighbour_x_offset[direction][i];
-			int neighbour_y = y + neighbour_y_offset[direction][i];
-
-			if (0 <= neighbour_x && neighbour_x <= this.real_w && 0 <= neighbour_y && neighbour_y <= this.real_h) {
-				Tile neighbour_tile = this.map.tiles[neighbour_y][neighbour_x];
-				difference = (new_z - neighbour_tile.getZ());
-
-				if (difference >= 2 && increasing) {
-					can_set_z = can_set_z && this.recursiveSetTileZ(neighbour_tile, new_z - 1, increasing, neighbour_direction[direction][i], test_mode);
-				} else if (difference <= -2 && !increasing) {
-					can_set_z = can_set_z && this.recursiveSetTileZ(neighbour_tile, new_z + 1, increasing, neighbour_direction[direction][i], test_mode);
-				}
-			}
-		}
-		if (!test_mode)
-			this.addTileToAffectedList(tile);
-		return can_set_z;
+	/**
+	 * Whether the tile at the given real coordinates is a user tile (i.e. not a border tile).
+	 */
+	private boolean isUserTile(int x, int y) {
+		return this.tile_max_z <= x && x < this.tile_max_z + this.w && this.tile_max_z <= y && y < this.tile_max_z + this.h;
 	}
 
 	private void internalScrollToCoordinate(Point coordinates, boolean adjust) {
@@ -1208,6 +1839,35 @@ public class UIsoEngine {
 		assert this.objects_grid_manager.isViewportPositionValid(this.viewport_offset_x, this.viewport_offset_y);
 	}
 
+	/**
+	 * Moves the previous scene according to the viewport scroll and marks the exposed areas to be redrawn. If the exposed areas are too big the whole scene will be
+	 * redrawn.
+	 */
+	private void scrollScene() {
+		int delta_x = this.viewport_offset_x - this.last_viewport_offset_x, delta_y = this.viewport_offset_y - this.last_viewport_offset_y;
+		int abs_delta_x = Math.abs(delta_x), abs_delta_y = Math.abs(delta_y);
+
+		if (this.scene_rectangle_manager.mustRedrawEverything())
+			return;
+		if (abs_delta_x >= this.viewport_w || abs_delta_y >= this.viewport_h
+				|| abs_delta_x * this.viewport_h + abs_delta_y * (this.viewport_w - abs_delta_x) > ((this.viewport_w * this.viewport_h) >> 1)) {
+			this.scene_rectangle_manager.invalidateAll();
+			return;
+		}
+
+		this.drawer.setClip(0, 0, this.viewport_w, this.viewport_h);
+		this.drawer.copyArea(Math.max(delta_x, 0), Math.max(delta_y, 0), this.viewport_w - abs_delta_x, this.viewport_h - abs_delta_y, -delta_x, -delta_y);
+		this.scene_rectangle_manager.clipRectangles();
+
+		/* The exposed L-shaped area is split in two rectangles that do not overlap. */
+		if (delta_y != 0)
+			this.scene_rectangle_manager.addRectangle(this.viewport_offset_x, delta_y > 0 ? this.viewport_offset_y + this.viewport_h - delta_y : this.viewport_offset_y,
+					this.viewport_w, abs_delta_y);
+		if (delta_x != 0)
+			this.scene_rectangle_manager.addRectangle(delta_x > 0 ? this.viewport_offset_x + this.viewport_w - delta_x : this.viewport_offset_x, delta_y > 0
+					? this.viewport_offset_y : this.viewport_offset_y + abs_delta_y, abs_delta_x, this.viewport_h - abs_delta_y);
+	}
+
 	private void updateSlope(Tile tile) {
 		if (!tile.mustCorrectTheSlope())
 			return;
@@ -1222,7 +1882,7 @@ public class UIsoEngine {
 		for (int i = 0; i < 3; i++) {
 			int neighbour_x = tile_x + Tile.neighbour_x_offset[i];
 			int neighbour_y = tile_y + Tile.neighbour_y_offset[i];
-			Tile neighbour_tile = this.map.tiles[neighbour_y][neighbour_x];
+			Tile neighbour_tile = this.map.getTileView(neighbour_x, neighbour_y);
 
 			if (highest_z != neighbour_tile.getZ()) {
 				same_z = false;
@@ -1232,14 +1892,16 @@ public class UIsoEngine {
 			}
 		}
 
-		if (highest_z == tile.getZ())
-			slope |= Tile.CORNER_N;
-		if (highest_z == this.map.tiles[tile_y + 1][tile_x + 1].getZ())
+		if (highest_z == this.map.getTileView(tile_x + 1, tile_y + 1).getZ())
 			slope |= Tile.CORNER_S;
-		if (highest_z == this.map.tiles[tile_y + 0][tile_x + 1].getZ())
+		if (highest_z == this.map.getTileView(tile_x + 1, tile_y + 0).getZ())
 			slope |= Tile.CORNER_W;
-		if (highest_z == this.map.tiles[tile_y + 1][tile_x + 0].getZ())
+		if (highest_z == this.map.getTileView(tile_x + 0, tile_y + 1).getZ())
 			slope |= Tile.CORNER_E;
+		/* The tile can be the view moved by the reads above. */
+		tile = this.map.getTileView(tile_x, tile_y);
+		if (highest_z == tile.getZ())
+			slope |= Tile.CORNER_N;
 
 		if (same_z)
 			next_slope = Tile.FLAT;
@@ -1247,9 +1909,17 @@ public class UIsoEngine {
 			next_slope = slope;
 		old_slope = tile.getSlope();
 		if (old_slope != next_slope) {
+			if (this.use_dirty_rectangle_system && tile.isVisible())
+				this.damageTile(tile);
 			tile.setSlope(next_slope);
-			if (tile.isVisible())
-				this.simulation_logic.informTileSlopeUpdate(this, tile, old_slope);
+			if (tile.isVisible()) {
+				if (this.terrain_chunk_manager != null)
+					this.terrain_chunk_manager.invalidateTile(tile);
+				if (this.use_dirty_rectangle_system)
+					this.damageTile(tile);
+				/* The simulation logic can keep the tile, so it does not receive the view. */
+				this.simulation_logic.informTileSlopeUpdate(this, this.map.getTile(tile_x, tile_y), old_slope);
+			}
 		}
 	}
 }
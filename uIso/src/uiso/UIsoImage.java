@@ -31,4 +31,17 @@ public abstract class UIsoImage {
 	public abstract int getW();
 
 	public abstract int getH();
+
+	/**
+	 * Used to build the alpha masks of the sprites (see {@link Sprite#computeAlphaMask()}). By default every pixel is opaque, so the hit tests consider the whole image.
+	 * 
+	 * @param x
+	 *           the pixel x-coordinate
+	 * @param y
+	 *           the pixel y-coordinate
+	 * @return true if the pixel is not transparent
+	 */
+	public boolean isOpaque(int x, int y) {
+		return true;
+	}
 }
@@ -16,39 +16,149 @@
  * You should have received a copy of the GNU General Public License
  * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package uiso;
 
+import java.nio.IntBuffer;
+
 import uiso.interfaces.ITileFactory;
 
-class UIsoMap {
+/**
+ * The map tiles (including the invisible border used by the tiles heights, see {@link UIsoConfiguration#tile_max_z}). The subclasses decide how the tiles are stored (see
+ * {@link UIsoConfiguration#tile_storage}). The tiles are indexed by their internal coordinates.
+ * 
+ * @author luis
+ */
+abstract class UIsoMap {
 	/* Package: */
-	Tile tiles[][];
-
-	UIsoMap(int w, int h, int tile_max_z, ITileFactory tile_factory) {
-		assert (0 < w && w + (tile_max_z << 1) + 1 <= 256 && 0 < h && h + (tile_max_z << 1) + 1 <= 256);
-
-		this.tiles = new Tile[h + (tile_max_z << 1) + 1][w + (tile_max_z << 1) + 1];
-		for (int y = 0; y <= (tile_max_z << 1) + h; y++) {
-			for (int x = 0; x <= (tile_max_z << 1) + w; x++) {
-				Tile tile;
-
-				if (x > w + tile_max_z || y > h + tile_max_z || x < tile_max_z || y < tile_max_z) {
-					tile = new Tile();
-					tile.setVisibility(false);
-				} else if (x == w + tile_max_z || y == h + tile_max_z) {
-					tile = tile_factory.buildNewTile(x - tile_max_z, y - tile_max_z);
-					tile.setVisibility(false);
-				} else {
-					tile = tile_factory.buildNewTile(x - tile_max_z, y - tile_max_z);
-				}
-
-				tile.setX(x);
-				tile.setY(y);
-				tile.setZ(0);
-
-				this.tiles[y][x] = tile;
+	int rows, row_length, virtual_world_tile_size, slope_height;
+	/* The tiles have been loaded (e.g, from a file) instead of built, so their heights are not known by the engine. */
+	boolean tiles_loaded;
+
+	UIsoMap(int w, int h, int tile_max_z, int virtual_world_tile_size, int slope_height) {
+		this.w = w;
+		this.h = h;
+		this.tile_max_z = tile_max_z;
+		this.virtual_world_tile_size = virtual_world_tile_size;
+		this.slope_height = slope_height;
+		this.rows = h + (tile_max_z << 1) + 1;
+		this.row_length = w + (tile_max_z << 1) + 1;
+	}
+
+	/**
+	 * @return the tile. It can be kept by the caller.
+	 */
+	abstract Tile getTile(int x, int y);
+
+	/**
+	 * The same as {@link #getTile(int, int)}, but the returned tile can be reused by the next call. It must be used only by loops that do not keep the tiles.
+	 */
+	abstract Tile getTileView(int x, int y);
+
+	/**
+	 * @return the data of the tile (see {@link Tile}). It is used by the tile views (see {@link Tile#newView(UIsoMap, int, int)}).
+	 */
+	abstract int getTileData(int x, int y);
+
+	abstract void setTileData(int x, int y, int data);
+
+	/**
+	 * @return the real x-coordinate of the tile position (the same as {@link UIsoEngine#toRealCoordinates(Point, Point)})
+	 */
+	int getTileRealX(Tile tile) {
+		return (tile.getY() - tile.getX()) * this.virtual_world_tile_size << 1;
+	}
+
+	/**
+	 * @return the real y-coordinate of the tile position, its z-coordinate included
+	 */
+	int getTileRealY(Tile tile) {
+		return (tile.getX() + tile.getY()) * this.virtual_world_tile_size - tile.getZ() * this.slope_height;
+	}
+
+	/**
+	 * Called whenever the tile z-coordinate changes, so the subclasses can update what they keep about the tile position.
+	 */
+	void updateTileRealPosition(Tile tile) {
+	}
+
+	/**
+	 * Called before a scene is drawn with the tile under the viewport center, so the subclasses can prepare the tiles around it.
+	 */
+	void prepareTilesAround(int x, int y) {
+	}
+
+	/**
+	 * Writes the tiles to where they are kept (if they are not only in memory).
+	 */
+	void flush() {
+	}
+
+	/**
+	 * Writes the tiles (see {@link #flush()}) and releases the resources used to keep them (e.g, files). The map can not be used anymore.
+	 */
+	void close() {
+	}
+
+	/**
+	 * Reads the data of all the tiles in row order (see {@link UIsoSnapshot}). Only the 16 least significant bits (z-coordinate, slope, visibility and user data) are
+	 * used, as the coordinates depend on the storage.
+	 */
+	void readTiles(IntBuffer buffer) {
+		for (int y = 0; y < this.rows; y++) {
+			for (int x = 0; x < this.row_length; x++) {
+				Tile tile = this.getTileView(x, y);
+				tile.setData((tile.getData() & 0xFFFF0000) | (buffer.get() & 0x0000FFFF));
+				this.updateTileRealPosition(tile);
 			}
 		}
 	}
+
+	/**
+	 * Writes the data of all the tiles in row order (see {@link #readTiles(IntBuffer)}).
+	 */
+	void writeTiles(IntBuffer buffer) {
+		for (int y = 0; y < this.rows; y++)
+			for (int x = 0; x < this.row_length; x++)
+				buffer.put(this.getTileView(x, y).getData() & 0x0000FFFF);
+	}
+
+	/**
+	 * Creates all the tiles (see {@link #buildTile(int, int, ITileFactory)}). It must be called by the subclasses constructors after their storage has been allocated.
+	 */
+	void buildTiles(ITileFactory tile_factory) {
+		for (int y = 0; y < this.rows; y++)
+			for (int x = 0; x < this.row_length; x++)
+				this.buildTile(x, y, tile_factory);
+	}
+
+	/**
+	 * Creates one tile using the factory (the tiles of the border are invisible) and stores it (see {@link #storeTile(int, int, Tile)}).
+	 */
+	void buildTile(int x, int y, ITileFactory tile_factory) {
+		int w = this.w, h = this.h, tile_max_z = this.tile_max_z;
+		Tile tile;
+
+		if (x > w + tile_max_z || y > h + tile_max_z || x < tile_max_z || y < tile_max_z) {
+			tile = new Tile();
+			tile.setVisibility(false);
+		} else if (x == w + tile_max_z || y == h + tile_max_z) {
+			tile = tile_factory.buildNewTile(x - tile_max_z, y - tile_max_z);
+			tile.setVisibility(false);
+		} else {
+			tile = tile_factory.buildNewTile(x - tile_max_z, y - tile_max_z);
+		}
+
+		tile.setZ(0);
+
+		this.storeTile(x, y, tile);
+		this.updateTileRealPosition(this.getTileView(x, y));
+	}
+
+	/**
+	 * Stores a tile built by {@link #buildTile(int, int, ITileFactory)}. Its coordinates have not been set.
+	 */
+	abstract void storeTile(int x, int y, Tile tile);
+
+	/* Private: */
+	private int w, h, tile_max_z;
 }
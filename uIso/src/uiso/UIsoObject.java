@@ -19,22 +19,15 @@
 
 package uiso;
 
+import java.nio.IntBuffer;
+
 /**
- * Represents an object in a 3D space. The objects can be part of at most 4 double linked lists (one for each corner). Each objects grid cell has a double linked list
- * whose elements are the objects inside it.
+ * Represents an object in a 3D space. The objects inserted in the engine have a slot in the objects grid (see {@link ObjectsGridManager}) and each of the (at most 4)
+ * objects grid cells covered by their corners holds the slot index.
  * 
  * @author luis
  */
-
-/*            N
- *   +-----------------+
- *   |                 |
- * W |                 | E
- *   |                 |
- *   +-----------------+
- *            S
- */
-public abstract class UIsoObject extends LinkedListElement {
+public abstract class UIsoObject {
 	/* Public: */
 	public UIsoObject() {
 		this.setVisibility(true);
@@ -42,12 +35,12 @@ public abstract class UIsoObject extends LinkedListElement {
 
 	public int getX() {
 		boolean sign = (this.data1 & 0x80000000) != 0;
-		return ((this.data1 & 0x7FFF0000) >>> 16) * (sign ? -1 : 1);
+		return (((this.data1 & 0x7FFF0000) >>> 16) | ((this.data3 & 0xFE000000) >>> 10)) * (sign ? -1 : 1);
 	}
 
 	public int getY() {
 		boolean sign = (this.data1 & 0x00008000) != 0;
-		return (this.data1 & 0x00007FFF) * (sign ? -1 : 1);
+		return ((this.data1 & 0x00007FFF) | ((this.data3 & 0x01FC0000) >>> 3)) * (sign ? -1 : 1);
 	}
 
 	public int getZ() {
@@ -64,22 +57,34 @@ public abstract class UIsoObject extends LinkedListElement {
 		return (this.data2 & 0x3FFFFFFF);
 	}
 
+	/**
+	 * @param x
+	 *           the x-coordinate. Its absolute value must not be bigger than {@link UIsoConstants#MAX_OBJECT_COORDINATE}.
+	 */
 	public void setX(int x) {
 		boolean sign = false;
 		if (x < 0) {
 			sign = true;
 			x = -x;
 		}
+		assert (x <= UIsoConstants.MAX_OBJECT_COORDINATE);
 		this.data1 = ((sign ? 1 : 0) << 31) | ((x << 16) & 0x7FFF0000) | (this.data1 & 0x0000FFFF);
+		this.data3 = ((x << 10) & 0xFE000000) | (this.data3 & 0x01FFFFFF);
 	}
 
+	/**
+	 * @param y
+	 *           the y-coordinate. Its absolute value must not be bigger than {@link UIsoConstants#MAX_OBJECT_COORDINATE}.
+	 */
 	public void setY(int y) {
 		boolean sign = false;
 		if (y < 0) {
 			sign = true;
 			y = -y;
 		}
+		assert (y <= UIsoConstants.MAX_OBJECT_COORDINATE);
 		this.data1 = ((sign ? 1 : 0) << 15) | (y & 0x00007FFF) | (this.data1 & 0xFFFF0000);
+		this.data3 = ((y << 3) & 0x01FC0000) | (this.data3 & 0xFE03FFFF);
 	}
 
 	public void setZ(int z) {
@@ -101,6 +106,35 @@ public abstract class UIsoObject extends LinkedListElement {
 		this.data2 = (user_data & 0x3FFFFFFF) | (this.data2 & 0xC0000000);
 	}
 
+	/**
+	 * The virtual size defines the bounding box used by the depth sorter (see {@link UIsoConfiguration#use_depth_sorter}). The object position is the box corner with the
+	 * biggest x-coordinate, the biggest y-coordinate and the smallest z-coordinate, so the box is [x - size x, x] x [y - size y, y] x [z, z + size z]. By default the
+	 * size is zero (a point).
+	 * 
+	 * @param size_x
+	 *           the size along the x-axis. It must be in [0, 1023].
+	 * @param size_y
+	 *           the size along the y-axis. It must be in [0, 1023].
+	 * @param size_z
+	 *           the size along the z-axis. It must be in [0, 4095].
+	 */
+	public void setVirtualSize(int size_x, int size_y, int size_z) {
+		assert (0 <= size_x && size_x <= 0x3FF && 0 <= size_y && size_y <= 0x3FF && 0 <= size_z && size_z <= 0xFFF);
+		this.data4 = ((size_z & 0xFFF) << 20) | ((size_y & 0x3FF) << 10) | (size_x & 0x3FF);
+	}
+
+	public int getVirtualSizeX() {
+		return this.data4 & 0x3FF;
+	}
+
+	public int getVirtualSizeY() {
+		return (this.data4 >>> 10) & 0x3FF;
+	}
+
+	public int getVirtualSizeZ() {
+		return (this.data4 >>> 20) & 0xFFF;
+	}
+
 	@Override
 	public String toString() {
 		return "[" + this.getX() + "," + this.getY() + "," + this.getZ() + "] : " + this.getUserData();
@@ -118,172 +152,47 @@ public abstract class UIsoObject extends LinkedListElement {
 	}
 
 	/* Package: */
-	final static int NW_VERTEX = 0;
-	final static int NE_VERTEX = 1;
-	final static int ES_VERTEX = 2;
-	final static int WS_VERTEX = 3;
-	final static int INVALID_VERTEX = 4;
-
-	LinkedListElement nw_foward, nw_backward, ne_foward, ne_backward, es_foward, es_backward, ws_foward, ws_backward;
-
-	LinkedListElement getPreviousElement(int vertex) {
-		switch (vertex) {
-			case NW_VERTEX:
-				return this.nw_backward;
-			case NE_VERTEX:
-				return this.ne_backward;
-			case ES_VERTEX:
-				return this.es_backward;
-			case WS_VERTEX:
-				return this.ws_backward;
-			default:
-				assert (false);
-			break;
-		}
-		return null;
-	}
-
-	LinkedListElement getNextElement(int vertex) {
-		switch (vertex) {
-			case NW_VERTEX:
-				return this.nw_foward;
-			case NE_VERTEX:
-				return this.ne_foward;
-			case ES_VERTEX:
-				return this.es_foward;
-			case WS_VERTEX:
-				return this.ws_foward;
-			default:
-				assert (false);
-			break;
-		}
-		return null;
-	}
-
-	int getVertexFromPreviousElement(LinkedListElement previous) {
-		if (previous == this.nw_backward)
-			return NW_VERTEX;
-		if (previous == this.ne_backward)
-			return NE_VERTEX;
-		if (previous == this.es_backward)
-			return ES_VERTEX;
-		if (previous == this.ws_backward)
-			return WS_VERTEX;
-		assert (false);
-		return INVALID_VERTEX;
-	}
-
-	void setValueToNextVertexField(LinkedListElement next, int vertex) {
-		switch (vertex) {
-			case NW_VERTEX:
-				this.nw_foward = next;
-			break;
-			case NE_VERTEX:
-				this.ne_foward = next;
-			break;
-			case ES_VERTEX:
-				this.es_foward = next;
-			break;
-			case WS_VERTEX:
-				this.ws_foward = next;
-			break;
-			case INVALID_VERTEX:
-				assert (false);
-			break;
-		}
-	}
-
-	void setValueToPreviousVertexField(LinkedListElement previous, int vertex) {
-		switch (vertex) {
-			case NW_VERTEX:
-				this.nw_backward = previous;
-			break;
-			case NE_VERTEX:
-				this.ne_backward = previous;
-			break;
-			case ES_VERTEX:
-				this.es_backward = previous;
-			break;
-			case WS_VERTEX:
-				this.ws_backward = previous;
-			break;
-			case INVALID_VERTEX:
-				assert (false);
-			break;
-		}
-	}
-
-	void setValueToVertex(LinkedListElement previous, LinkedListElement next, int vertex) {
-		this.setValueToNextVertexField(next, vertex);
-		this.setValueToPreviousVertexField(previous, vertex);
-	}
-
-	void removeObjectFromLinkedList(int vertex) {
-		LinkedListElement previous = this.getPreviousElement(vertex);
-		uiso.UIsoObject next = (uiso.UIsoObject) this.getNextElement(vertex);
-
-		if (previous != null) {
-			if (previous instanceof UIsoObjectsGridCell) {
-				((UIsoObjectsGridCell) previous).isometric_engine_object = next;
-			} else {
-				uiso.UIsoObject previous_object = (uiso.UIsoObject) previous;
-				previous_object.setValueToNextVertexField(next, this.getVertexOfPreviousElementThatContinuesTheListInVertex(vertex));
-			}
-		}
-
-		if (next != null) {
-			next.setValueToPreviousVertexField(previous, this.getVertexOfNextElementThatContinuesTheListInVertex(vertex));
-			if (previous instanceof uiso.UIsoObject) {
-				uiso.UIsoObject previous_object = (uiso.UIsoObject) previous;
-				previous_object.setVertexOfNextElementThatContinuesTheListInVertex(this.getVertexOfNextElementThatContinuesTheListInVertex(vertex), this
-						.getVertexOfPreviousElementThatContinuesTheListInVertex(vertex));
-				next.setVertexOfPreviousElementThatContinuesTheListInVertex(this.getVertexOfPreviousElementThatContinuesTheListInVertex(vertex), this
-						.getVertexOfNextElementThatContinuesTheListInVertex(vertex));
-			}
-		}
-
-		this.setValueToVertex(null, null, vertex);
+	/* Area (real coordinates) covered by the object when the engine was informed for the last time. A zero width means that it is not in the engine. */
+	int bounds_x, bounds_y, bounds_w, bounds_h;
+	/* Position of the object in the sorted objects of the last scene (see UIsoConfiguration.use_scene_order_reuse and SceneObjectsManager.getDrawingPosition). */
+	int scene_index;
+	/* Slot in the objects grid. -1 means that it is not in the grid. */
+	int slot = -1;
+
+	boolean isMotionPending() {
+		return (this.data2 & 0x80000000) != 0;
 	}
 
-	void setSelected(boolean selected) {
-		if (selected)
-			this.data2 = (1 << 31) | (this.data2 & 0x7FFFFFFF);
+	void setMotionPending(boolean motion_pending) {
+		if (motion_pending)
+			this.data2 |= 0x80000000;
 		else
 			this.data2 &= 0x7FFFFFFF;
 	}
 
-	boolean isSelected() {
-		return (this.data2 & 0x80000000) != 0;
-	}
-
-	int getVertexOfPreviousElementThatContinuesTheListInVertex(int vertex) {
-		assert (NW_VERTEX <= vertex && vertex <= WS_VERTEX);
-		int shift = (vertex << 1) + 24, value;
-		value = (this.data3 & (0x3 << shift)) >>> shift;
-		assert (NW_VERTEX <= value && value <= WS_VERTEX);
-		return value;
+	boolean isAppearanceCached() {
+		return (this.data3 & 0x00010000) != 0;
 	}
 
-	int getVertexOfNextElementThatContinuesTheListInVertex(int vertex) {
-		assert (NW_VERTEX <= vertex && vertex <= WS_VERTEX);
-		int shift = (vertex << 1) + 16, value;
-		value = (this.data3 & (0x3 << shift)) >>> shift;
-		assert (NW_VERTEX <= value && value <= WS_VERTEX);
-		return value;
+	void setAppearanceCached(boolean appearance_cached) {
+		if (appearance_cached)
+			this.data3 |= 0x00010000;
+		else
+			this.data3 &= 0xFFFEFFFF;
 	}
 
-	void setVertexOfPreviousElementThatContinuesTheListInVertex(int vertex_value, int vertex) {
-		assert (NW_VERTEX <= vertex_value && vertex_value <= WS_VERTEX);
-		assert (NW_VERTEX <= vertex && vertex <= WS_VERTEX);
-		int shift = (vertex << 1) + 24;
-		this.data3 = (this.data3 & (~(0x3 << shift))) | (vertex_value << shift);
+	/**
+	 * Writes the packed data (see below) to a snapshot (see {@link UIsoSnapshot}). The bits used only by the engine are cleared.
+	 */
+	void writeData(IntBuffer buffer) {
+		buffer.put(this.data1).put(this.data2 & 0x7FFFFFFF).put(this.data3 & 0xFFFEFFFF).put(this.data4);
 	}
 
-	void setVertexOfNextElementThatContinuesTheListInVertex(int vertex_value, int vertex) {
-		assert (NW_VERTEX <= vertex_value && vertex_value <= WS_VERTEX);
-		assert (NW_VERTEX <= vertex && vertex <= WS_VERTEX);
-		int shift = (vertex << 1) + 16;
-		this.data3 = (this.data3 & (~(0x3 << shift))) | (vertex_value << shift);
+	void readData(IntBuffer buffer) {
+		this.data1 = buffer.get();
+		this.data2 = buffer.get() & 0x7FFFFFFF;
+		this.data3 = buffer.get() & 0xFFFEFFFF;
+		this.data4 = buffer.get();
 	}
 
 	/* Private: */
@@ -291,24 +200,24 @@ public abstract class UIsoObject extends LinkedListElement {
 	/* The compiler allocates 4 bytes for byte, boolean, short and int types. */
 	/* Data 1: */
 	/* [31 ... 31] (1 bit): x sign */
-	/* [30 ... 16] (15 bits): x */
+	/* [30 ... 16] (15 bits): x (15 least significant bits) */
 	/* [15 ... 15] (1 bit): y sign */
-	/* [14 ... 0] (15 bits): y */
+	/* [14 ... 0] (15 bits): y (15 least significant bits) */
 	/* Data 2: */
-	/* [31 ... 31] (1 bit): selected - used to avoid repetitions during scene drawing */
+	/* [31 ... 31] (1 bit): motion pending - used by the deferred object motion */
 	/* [30 ... 30] (1 bits): visible */
 	/* [29 ... 0] (30 bits): user data */
 	/* Data 3: */
-	/* [31 ... 30] (2 bits): ws_backward field */
-	/* [29 ... 28] (2 bits): es_backward field */
-	/* [27 ... 26] (2 bits): ne_backward field */
-	/* [25 ... 24] (2 bits): nw_backward field */
-	/* [23 ... 22] (2 bits): ws_foward field */
-	/* [21 ... 20] (2 bits): es_foward field */
-	/* [19 ... 18] (2 bits): ne_foward field */
-	/* [17 ... 16] (2 bits): nw_foward field */
+	/* [31 ... 25] (7 bits): x (7 most significant bits) */
+	/* [24 ... 18] (7 bits): y (7 most significant bits) */
+	/* [17 ... 17] (1 bit): not used */
+	/* [16 ... 16] (1 bit): appearance cached - the cached sprite or string bounds are valid */
 	/* [15 ... 15] (1 bit): z sign */
 	/* [14 ... 0] (15 bits): z */
+	/* Data 4: */
+	/* [31 ... 20] (12 bits): virtual size z */
+	/* [19 ... 10] (10 bits): virtual size y */
+	/* [9 ... 0] (10 bits): virtual size x */
 
-	private int data1, data2, data3;
+	private int data1, data2, data3, data4;
 }
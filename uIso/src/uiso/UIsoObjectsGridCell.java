@@ -19,44 +19,42 @@
 
 package uiso;
 
-import java.util.ArrayList;
-
-class UIsoObjectsGridCell extends LinkedListElement {
+/**
+ * Holds the objects of a cell of an {@link ObjectsSpatialIndex}. Each entry identifies an object slot (see {@link ObjectsGridManager}): the grids store the slot and the
+ * corner that has been used to insert the object ({@code slot << 2 | corner}) and the quadtree stores only the slot. The entries are not ordered, so removing one of
+ * them moves the last entry to its position.
+ * 
+ * @author luis
+ */
+class UIsoObjectsGridCell {
 	/* Package: */
-	UIsoObject isometric_engine_object;
-	ArrayList<UIsoObject> objects = new ArrayList<UIsoObject>();
-
-	void insertObject(UIsoObject object, int vertex) {
-		UIsoObject previous_first_object = this.isometric_engine_object;
-
-		this.isometric_engine_object = object;
-		object.setValueToVertex(this, previous_first_object, vertex);
-		objects.add(object);
-		if (previous_first_object == null)
-			return;
-
-		int aux = previous_first_object.getVertexFromPreviousElement(this);
+	int[] entries = new int[INITIAL_CAPACITY];
+	int n_entries;
 
-		previous_first_object.setValueToPreviousVertexField(object, aux);
-		previous_first_object.setVertexOfPreviousElementThatContinuesTheListInVertex(vertex, aux);
-		object.setVertexOfNextElementThatContinuesTheListInVertex(aux, vertex);
-	}
-	public UIsoObject findObject(int x, int y){
-		if(objects.size() <= 0){
-			return null;
-		}
-		System.out.println("objects " + objects.size());
-		for(int i = 0; i < objects.size(); i++){
-			if(objects.get(i).getX() <= (x*16) + 16 && objects.get(i).getX() >= (x*16) - 16
-			&& objects.get(i).getY() <= (y*16) + 15 && objects.get(i).getY() >= (y*16) - 16){
-				System.out.println("example " + i + " " + objects.get(i) + " " + x + "," + y);
-				return objects.get(i);
-			}
+	/**
+	 * @return the position of the new entry
+	 */
+	int addEntry(int entry) {
+		if (this.n_entries == this.entries.length) {
+			int[] entries = new int[this.entries.length << 1];
+			System.arraycopy(this.entries, 0, entries, 0, this.n_entries);
+			this.entries = entries;
 		}
-		return null;
+		this.entries[this.n_entries] = entry;
+		return this.n_entries++;
 	}
-	void removeObject(UIsoObject object) {
-		int index = objects.indexOf(object);
-		objects.remove(index);
+
+	/**
+	 * @return the entry moved to the position of the removed entry or -1 when no entry has been moved
+	 */
+	int removeEntry(int position) {
+		int last = --this.n_entries;
+		if (position == last)
+			return -1;
+		this.entries[position] = this.entries[last];
+		return this.entries[position];
 	}
-}
\ No newline at end of file
+
+	/* Private: */
+	private final static int INITIAL_CAPACITY = 4;
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uiso;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import uiso.exceptions.InvalidSnapshotException;
+import uiso.interfaces.IUIsoObjectFactory;
+
+/**
+ * Saves and loads the map and the objects of an engine (see {@link UIsoEngine#saveSnapshot(String, IUIsoObjectFactory)}). A snapshot is a file of little-endian ints
+ * (memory-mapped when it is loaded), so both operations are bulk copies between the file and the map (see {@link UIsoMap#readTiles(IntBuffer)}) and nothing is
+ * parsed:
+ * <ul>
+ * <li>Header ({@value #HEADER_INTS} ints): magic number, version, map width, map height, maximum tile z, number of objects and viewport center (virtual coordinates).</li>
+ * <li>Tiles: the packed data (see {@link Tile}) of all the tiles, border included, in row order.</li>
+ * <li>Objects: the type (see {@link IUIsoObjectFactory}) and the 4 packed data ints of each object (see {@link UIsoObject}).</li>
+ * </ul>
+ * A snapshot can only be loaded by an engine with the same map dimensions, but the tile storage can be different.
+ * 
+ * @author luis
+ */
+class UIsoSnapshot {
+	/* Package: */
+	int n_objects, viewport_center_x, viewport_center_y;
+
+	static void save(String path, UIsoMap map, int w, int h, int tile_max_z, Point viewport_center, UIsoObject[] objects, int n_objects, int[] object_types)
+			throws IOException {
+		int n_saved_objects = 0;
+		for (int i = 0; i < n_objects; i++)
+			if (object_types[i] >= 0)
+				n_saved_objects++;
+
+		long length = (HEADER_INTS + (long) map.rows * map.row_length + (long) n_saved_objects * OBJECT_INTS) << 2;
+		if (length > Integer.MAX_VALUE)
+			throw new IOException("The snapshot is too big.");
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+		IntBuffer ints = buffer.asIntBuffer();
+		ints.put(MAGIC_NUMBER).put(VERSION).put(w).put(h).put(tile_max_z).put(n_saved_objects).put(viewport_center.x).put(viewport_center.y);
+		map.writeTiles(ints);
+		for (int i = 0; i < n_objects; i++) {
+			if (object_types[i] < 0)
+				continue;
+			ints.put(object_types[i]);
+			objects[i].writeData(ints);
+		}
+
+		/*
+		 * The snapshot is written in a new file that replaces the old one, so a snapshot that is still mapped by a load is never truncated or changed and an
+		 * interrupted save does not destroy the previous snapshot.
+		 */
+		Path target = Paths.get(path), temporary = Paths.get(path + ".tmp");
+		FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		boolean written = false;
+		try {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(false);
+			written = true;
+		} finally {
+			channel.close();
+			if (!written)
+				Files.deleteIfExists(temporary);
+		}
+		Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Opens a snapshot and checks its header. The tiles and the objects are read by {@link #readTiles(UIsoMap)} and {@link #readObjects(IUIsoObjectFactory)}.
+	 */
+	UIsoSnapshot(String path, int w, int h, int tile_max_z) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			if (file.length() < HEADER_INTS << 2)
+				throw new InvalidSnapshotException("The snapshot is truncated.");
+
+			MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			this.ints = buffer.asIntBuffer();
+		} finally {
+			/* The mapping remains valid after the file is closed. */
+			file.close();
+		}
+
+		if (this.ints.get() != MAGIC_NUMBER)
+			throw new InvalidSnapshotException("The file is not a snapshot.");
+		if (this.ints.get() != VERSION)
+			throw new InvalidSnapshotException("The snapshot version is not supported.");
+		if (this.ints.get() != w || this.ints.get() != h || this.ints.get() != tile_max_z)
+			throw new InvalidSnapshotException("The snapshot map dimensions are different.");
+		this.n_objects = this.ints.get();
+		this.viewport_center_x = this.ints.get();
+		this.viewport_center_y = this.ints.get();
+
+		int rows = h + (tile_max_z << 1) + 1, row_length = w + (tile_max_z << 1) + 1;
+		if (this.n_objects < 0 || this.ints.remaining() != (long) rows * row_length + (long) this.n_objects * OBJECT_INTS)
+			throw new InvalidSnapshotException("The snapshot is truncated.");
+		this.objects_position = this.ints.position() + rows * row_length;
+	}
+
+	void readTiles(UIsoMap map) {
+		map.readTiles(this.ints);
+	}
+
+	/**
+	 * Can be called before {@link #readTiles(UIsoMap)}, as the objects are read from their own position.
+	 * 
+	 * @return the objects created by the factory with their packed data restored
+	 */
+	UIsoObject[] readObjects(IUIsoObjectFactory object_factory) {
+		UIsoObject[] objects = new UIsoObject[this.n_objects];
+		IntBuffer ints = this.ints.duplicate();
+
+		ints.position(this.objects_position);
+		for (int i = 0; i < this.n_objects; i++) {
+			objects[i] = object_factory.buildNewObject(ints.get());
+			objects[i].readData(ints);
+		}
+		return objects;
+	}
+
+	/* Private: */
+	private final static int MAGIC_NUMBER = 0x55495353; /* "UISS" */
+	private final static int VERSION = 1;
+	private final static int HEADER_INTS = 8;
+	private final static int OBJECT_INTS = 5;
+
+	private IntBuffer ints;
+	private int objects_position;
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+/**
+ * An {@link ObjectsGrid} whose cells are stored in an array with one position per cell. The lookups are the fastest, but the array covers the whole simulation visible
+ * area even if most of its cells are empty.
+ * 
+ * @author luis
+ */
+class UniformObjectsGrid extends ObjectsGrid {
+	/* Package: */
+	UniformObjectsGrid(ObjectsGridManager objects_grid_manager, int min_x, int min_y, int max_x, int max_y, int cell_size) {
+		super(objects_grid_manager, min_x, min_y, max_x, max_y, cell_size);
+		this.cells = new UIsoObjectsGridCell[this.w_length * this.h_length];
+	}
+
+	@Override
+	UIsoObjectsGridCell getCell(int key, boolean create) {
+		UIsoObjectsGridCell cell = this.cells[key];
+
+		if (cell == null && create) {
+			cell = this.cells[key] = new UIsoObjectsGridCell();
+			this.n_cells++;
+		}
+		return cell;
+	}
+
+	@Override
+	int getNumberOfCells() {
+		return this.n_cells;
+	}
+
+	/* Private: */
+	private UIsoObjectsGridCell[] cells;
+	private int n_cells;
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uiso;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the objects whose area intersects the viewport, so gathering the objects of a scene is a copy of this set instead of a spatial query. The set is updated when
+ * an object moves or is removed and, when the viewport is scrolled, only the strips that entered the viewport are queried in the objects grid (see
+ * {@link ObjectsGridManager}) and the objects that left it are dropped. The position of each object in the set is indexed by its slot.
+ * 
+ * @author luis
+ */
+class VisibleObjectsSet {
+	/* Package: */
+	/* The objects in the set. Only the first n_objects positions are used. */
+	UIsoObject[] objects;
+	int n_objects;
+
+	VisibleObjectsSet(UIsoEngine isometric_engine, ObjectsGridManager objects_grid_manager) {
+		this.objects_grid_manager = objects_grid_manager;
+		this.viewport_w = isometric_engine.viewport_w;
+		this.viewport_h = isometric_engine.viewport_h;
+		this.objects = new UIsoObject[INITIAL_CAPACITY];
+		this.slot_positions = new int[INITIAL_CAPACITY];
+		Arrays.fill(this.slot_positions, -1);
+	}
+
+	/**
+	 * Inserts or removes the object according to its current area. It must be called whenever the area of an object in the engine changes.
+	 */
+	void updateObject(UIsoObject object) {
+		if (!this.initialized)
+			return;
+		if (this.intersects(object)) {
+			if (this.getPosition(object.slot) < 0)
+				this.add(object);
+		} else {
+			this.remove(object.slot);
+		}
+	}
+
+	void removeObject(UIsoObject object) {
+		if (object.slot >= 0)
+			this.remove(object.slot);
+	}
+
+	/**
+	 * Moves the tracked viewport to the given position. When it overlaps the previous one, only the objects of the previous set and the objects in the strips that entered
+	 * the viewport are tested; otherwise the set is rebuilt.
+	 * 
+	 * @return the number of objects in the set
+	 */
+	int update(int viewport_offset_x, int viewport_offset_y) {
+		int old_min_x = this.viewport_offset_x, old_min_y = this.viewport_offset_y, old_max_x = old_min_x + this.viewport_w - 1, old_max_y = old_min_y + this.viewport_h - 1;
+		int min_x = viewport_offset_x, min_y = viewport_offset_y, max_x = min_x + this.viewport_w - 1, max_y = min_y + this.viewport_h - 1;
+
+		if (this.initialized && min_x == old_min_x && min_y == old_min_y)
+			return this.n_objects;
+
+		this.viewport_offset_x = viewport_offset_x;
+		this.viewport_offset_y = viewport_offset_y;
+
+		if (!this.initialized || min_x > old_max_x || old_min_x > max_x || min_y > old_max_y || old_min_y > max_y) {
+			for (int i = 0; i < this.n_objects; i++) {
+				this.slot_positions[this.objects[i].slot] = -1;
+				this.objects[i] = null;
+			}
+			this.n_objects = 0;
+			this.initialized = true;
+			this.addObjectsIn(min_x, min_y, max_x, max_y);
+			return this.n_objects;
+		}
+
+		/* Drop the objects that left the viewport. */
+		for (int i = 0; i < this.n_objects; i++) {
+			UIsoObject object = this.objects[i];
+			if (!this.intersects(object)) {
+				this.remove(object.slot);
+				i--;
+			}
+		}
+
+		/* Add the objects in the strips that entered the viewport: the rows above and below the overlap and the columns at its left and right. */
+		int overlap_min_y = Math.max(min_y, old_min_y), overlap_max_y = Math.min(max_y, old_max_y);
+		if (min_y < old_min_y)
+			this.addObjectsIn(min_x, min_y, max_x, old_min_y - 1);
+		if (max_y > old_max_y)
+			this.addObjectsIn(min_x, old_max_y + 1, max_x, max_y);
+		if (min_x < old_min_x)
+			this.addObjectsIn(min_x, overlap_min_y, old_min_x - 1, overlap_max_y);
+		if (max_x > old_max_x)
+			this.addObjectsIn(old_max_x + 1, overlap_min_y, max_x, overlap_max_y);
+
+		return this.n_objects;
+	}
+
+	/* Private: */
+	private static final int INITIAL_CAPACITY = 256;
+
+	private ObjectsGridManager objects_grid_manager;
+	private boolean initialized;
+	private int viewport_offset_x, viewport_offset_y, viewport_w, viewport_h;
+	/* The position of each slot in objects (-1 means that it is not in the set). */
+	private int[] slot_positions;
+
+	/* The area of the object (see UIsoObject.bounds_x) and the viewport are compared the same way the objects grid queries compare them. */
+	private boolean intersects(UIsoObject object) {
+		return object.bounds_w != 0 && object.bounds_x + object.bounds_w >= this.viewport_offset_x && object.bounds_x < this.viewport_offset_x + this.viewport_w
+				&& object.bounds_y + object.bounds_h >= this.viewport_offset_y && object.bounds_y < this.viewport_offset_y + this.viewport_h;
+	}
+
+	private void addObjectsIn(int min_x, int min_y, int max_x, int max_y) {
+		int n = this.objects_grid_manager.findObjects(min_x, min_y, max_x, max_y);
+		UIsoObject[] found_objects = this.objects_grid_manager.found_objects;
+		for (int i = 0; i < n; i++) {
+			UIsoObject object = found_objects[i];
+			if (this.getPosition(object.slot) < 0 && this.intersects(object))
+				this.add(object);
+		}
+	}
+
+	private int getPosition(int slot) {
+		return slot < this.slot_positions.length ? this.slot_positions[slot] : -1;
+	}
+
+	private void add(UIsoObject object) {
+		int slot = object.slot;
+		if (slot >= this.slot_positions.length) {
+			int length = this.slot_positions.length;
+			this.slot_positions = Arrays.copyOf(this.slot_positions, Math.max(length << 1, slot + 1));
+			Arrays.fill(this.slot_positions, length, this.slot_positions.length, -1);
+		}
+		if (this.n_objects == this.objects.length)
+			this.objects = Arrays.copyOf(this.objects, this.n_objects << 1);
+		this.slot_positions[slot] = this.n_objects;
+		this.objects[this.n_objects++] = object;
+	}
+
+	private void remove(int slot) {
+		int position = this.getPosition(slot);
+		if (position < 0)
+			return;
+		UIsoObject last = this.objects[--this.n_objects];
+		this.objects[position] = last;
+		this.slot_positions[last.slot] = position;
+		this.objects[this.n_objects] = null;
+		this.slot_positions[slot] = -1;
+	}
+}
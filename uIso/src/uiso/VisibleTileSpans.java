@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso;
+
+/**
+ * For each row (tile y-coordinate) of the map, the range of tiles (tile x-coordinates) whose sprites can intersect a rectangle (real coordinates). It is computed
+ * directly from the rectangle using the tile position equations:
+ * 
+ * <pre>
+ * real x = (tile y - tile x) * (tile_w / 2)
+ * real y = (tile x + tile y) * (tile_h / 2) - tile z * slope_height
+ * </pre>
+ * 
+ * So the tiles that can intersect the rectangle are inside a band of {@code tile x + tile y} values and a band of {@code tile y - tile x} values.
+ * 
+ * @author luis
+ */
+class VisibleTileSpans {
+	/* Package: */
+	int min_y, max_y; /* If min_y > max_y there are no tiles. */
+	int[] min_x, max_x; /* Indexed by the tile y-coordinate. */
+
+	VisibleTileSpans(UIsoEngine isometric_engine) {
+		this.tile_w_half = isometric_engine.tile_w >> 1;
+		this.tile_h_half = isometric_engine.tile_h >> 1;
+		this.slope_height = isometric_engine.slope_height;
+		this.first_x = this.first_y = isometric_engine.tile_max_z;
+		this.last_x = isometric_engine.w + isometric_engine.tile_max_z - 1;
+		this.last_y = isometric_engine.h + isometric_engine.tile_max_z - 1;
+		this.min_x = new int[this.last_y + 1];
+		this.max_x = new int[this.last_y + 1];
+	}
+
+	/**
+	 * Computes the spans of the tiles whose sprites can intersect the rectangle [min_real_x, max_real_x[ x [min_real_y, max_real_y[. The tile sprites are assumed to be
+	 * inside the area defined by {@code left}, {@code right}, {@code above} and {@code below} around the tile position and the tiles z-coordinates are assumed to be at
+	 * most {@code max_z}.
+	 */
+	void compute(int min_real_x, int min_real_y, int max_real_x, int max_real_y, int left, int right, int above, int below, int max_z) {
+		/* tile x + tile y: */
+		int min_sum = floorDiv(min_real_y - below, this.tile_h_half) + 1;
+		int max_sum = ceilDiv(max_real_y + above + max_z * this.slope_height, this.tile_h_half) - 1;
+		/* tile y - tile x: */
+		int min_difference = floorDiv(min_real_x - right, this.tile_w_half) + 1;
+		int max_difference = ceilDiv(max_real_x + left, this.tile_w_half) - 1;
+
+		this.min_y = Math.max(this.first_y, ceilDiv(min_sum + min_difference, 2));
+		this.max_y = Math.min(this.last_y, floorDiv(max_sum + max_difference, 2));
+
+		for (int y = this.min_y; y <= this.max_y; y++) {
+			this.min_x[y] = Math.max(this.first_x, Math.max(min_sum - y, y - max_difference));
+			this.max_x[y] = Math.min(this.last_x, Math.min(max_sum - y, y - min_difference));
+		}
+	}
+
+	/* Private: */
+	private int tile_w_half, tile_h_half, slope_height, first_x, first_y, last_x, last_y;
+
+	private static int floorDiv(int a, int b) {
+		int q = a / b;
+		if ((a % b != 0) && ((a < 0) != (b < 0)))
+			q--;
+		return q;
+	}
+
+	private static int ceilDiv(int a, int b) {
+		return -floorDiv(-a, b);
+	}
+}
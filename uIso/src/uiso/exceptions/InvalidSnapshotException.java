@@ -16,14 +16,14 @@
  * You should have received a copy of the GNU General Public License
  * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
  */
+package uiso.exceptions;
 
-package uiso;
+public class InvalidSnapshotException extends IllegalArgumentException {
+	/* Private: */
+	private static final long serialVersionUID = 2815370953172463047L;
 
-abstract class SceneObject {
-	/* Package: */
-	SceneObject() {
-		this.real_coordinates = new Point();
+	/* Public: */
+	public InvalidSnapshotException(String s) {
+		super(s);
 	}
-
-	Point real_coordinates;
 }
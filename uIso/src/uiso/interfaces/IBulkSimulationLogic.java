@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso.interfaces;
+
+import uiso.Tile;
+import uiso.UIsoEngine;
+
+/**
+ * An {@link ISimulationLogic} that can be informed about changes of many tiles at once (see {@link UIsoEngine#setTilesZ(int[])}). The engine checks whether its
+ * {@link ISimulationLogic} implements this interface: when it does not, the bulk changes are informed tile by tile, as
+ * {@link UIsoEngine#setTileZ(Tile, int)} does.
+ * 
+ * @author luis
+ */
+public interface IBulkSimulationLogic extends ISimulationLogic {
+	/* Public: */
+	/**
+	 * Informs user that the z-coordinates and/or the slopes of many tiles have been changed at once. It is called instead of
+	 * {@link #informTileZUpdate(UIsoEngine, Tile, int)} and {@link #informTileSlopeUpdate(UIsoEngine, Tile, int)} for each tile.
+	 * 
+	 * @param uiso_engine
+	 *           the {@link UIsoEngine} that owns the affected tiles
+	 * @param min_x
+	 *           the smallest x-coordinate of the affected tiles
+	 * @param min_y
+	 *           the smallest y-coordinate of the affected tiles
+	 * @param max_x
+	 *           the biggest x-coordinate of the affected tiles
+	 * @param max_y
+	 *           the biggest y-coordinate of the affected tiles
+	 */
+	void informTilesUpdate(UIsoEngine uiso_engine, int min_x, int min_y, int max_x, int max_y);
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso.interfaces;
+
+import uiso.UIsoConfiguration;
+import uiso.UIsoImage;
+
+/**
+ * An {@link IDrawer} that can draw on off-screen images. It is required only by the terrain chunk cache (see {@link UIsoConfiguration#terrain_chunk_size}): the
+ * engine creation fails if the cache is enabled and its {@link IDrawer} does not implement this interface.
+ * 
+ * @author luis
+ */
+public interface IChunkDrawer extends IDrawer {
+	/* Public: */
+	/**
+	 * Creates an off-screen image that can be used as drawing target (see {@link #setDrawingTarget(UIsoImage)}). It must be completely transparent.
+	 * 
+	 * @param w
+	 *           the image width
+	 * @param h
+	 *           the image height
+	 * @return the new image
+	 */
+	public UIsoImage createImage(int w, int h);
+
+	/**
+	 * Redirects the following drawing operations to an image created by {@link #createImage(int, int)}. Its clip is the whole image. The state of the previous target
+	 * (e.g, its clip) must be kept.
+	 * 
+	 * @param image
+	 *           the image that will be drawn or {@code null} to draw on the viewport again
+	 */
+	public void setDrawingTarget(UIsoImage image);
+}
@@ -50,7 +50,8 @@ public interface IDrawer {
 	public void clear();
 
 	/**
-	 * Must fill the rectangle area with the background color/texture.
+	 * Must fill the rectangle area with the background color/texture. If the drawing target is an image (see {@link IChunkDrawer#setDrawingTarget(UIsoImage)}) the area
+	 * must become transparent.
 	 * 
 	 * @param x
 	 *           the rectangle top-left corner x-coordinate
@@ -141,7 +142,8 @@ public interface IDrawer {
 	 * drawn first should be in the array first position and so on.
 	 * 
 	 * @param tile
-	 *           the tile
+	 *           the tile. It is valid only during the call: the engine can reuse the same instance for other tiles (see
+	 *           {@link UIsoConfiguration#tile_storage}), so it must not be kept.
 	 * @param sprites
 	 *           its sprites
 	 */
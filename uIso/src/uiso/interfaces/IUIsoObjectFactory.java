@@ -16,10 +16,24 @@
  * You should have received a copy of the GNU General Public License
  * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
  */
+package uiso.interfaces;
 
-package uiso;
+import uiso.UIsoEngine;
+import uiso.UIsoObject;
 
-class StringSceneObject extends SceneObject {
-	/* Package: */
-	StringObject string_object;
+/**
+ * Tells the type of the objects saved in a snapshot (see {@link UIsoEngine#saveSnapshot(String, IUIsoObjectFactory)}) and creates them again when the snapshot is loaded.
+ * The engine saves and restores the position, the user data, the visibility and the virtual size of the objects. Everything else must be derived from the type and the
+ * user data.
+ * 
+ * @author luis
+ */
+public interface IUIsoObjectFactory {
+	/* Public: */
+	/**
+	 * @return the type of the object (at least zero) or a negative value if the object must not be saved
+	 */
+	public abstract int getObjectType(UIsoObject object);
+
+	public abstract UIsoObject buildNewObject(int type);
 }
@@ -17,7 +17,19 @@
  * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package uiso;
+package uiso.interfaces;
 
-abstract class LinkedListElement {
+import uiso.UIsoEngine;
+import uiso.UIsoObject;
+
+/**
+ * Computes the depth key of a {@link UIsoObject}. It is an alternative to {@link IUIsoObjectComparator}: the key is computed once per scene for each object and the
+ * objects are drawn in ascending key order (objects with equal keys keep the order in which they were found). The objects are sorted using a radix sort, so the cost
+ * is linear in the number of objects in the scene.
+ * 
+ * @author luis
+ */
+public interface IUIsoObjectSortKey {
+	/* Public: */
+	public abstract long getSortKey(UIsoEngine uiso_engine, UIsoObject object);
 }
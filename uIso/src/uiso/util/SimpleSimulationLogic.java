@@ -21,9 +21,9 @@ package uiso.util;
 
 import uiso.Tile;
 import uiso.UIsoEngine;
-import uiso.interfaces.ISimulationLogic;
+import uiso.interfaces.IBulkSimulationLogic;
 
-public class SimpleSimulationLogic implements ISimulationLogic {
+public class SimpleSimulationLogic implements IBulkSimulationLogic {
 	/* Public: */
 	@Override
 	public boolean canSetTileZ(UIsoEngine uiso_engine, Tile tile, int z) {
@@ -37,4 +37,8 @@ public class SimpleSimulationLogic implements ISimulationLogic {
 	@Override
 	public void informTileSlopeUpdate(UIsoEngine uiso_engine, Tile tile, int old_slope) {
 	}
+
+	@Override
+	public void informTilesUpdate(UIsoEngine uiso_engine, int min_x, int min_y, int max_x, int max_y) {
+	}
 }
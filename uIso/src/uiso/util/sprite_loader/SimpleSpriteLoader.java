@@ -45,6 +45,7 @@ public class SimpleSpriteLoader {
 			Sprite sprite = new Sprite();
 			sprites.add(sprite);
 			sprite.setImage(this.image_manipulator.getSubImage(image, x + 1, y + 1, w, h));
+			sprite.computeAlphaMask();
 
 			/* Now find the anchor point using the border. */
 			for (int i = 0; i < w; i++) {
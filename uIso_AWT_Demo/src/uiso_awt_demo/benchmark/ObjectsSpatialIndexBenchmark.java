@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso_awt_demo.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import uiso.Point;
+import uiso.Rectangle;
+import uiso.Sprite;
+import uiso.SpriteObject;
+import uiso.Tile;
+import uiso.UIsoConfiguration;
+import uiso.UIsoConstants;
+import uiso.UIsoEngine;
+import uiso.UIsoImage;
+import uiso.UIsoObject;
+import uiso.interfaces.IDrawer;
+import uiso.util.SimpleSimulationLogic;
+import uiso.util.SimpleTileFactory;
+import uiso_awt_demo.image.JavaSEImage;
+
+/**
+ * Compares the objects spatial indices (see {@link UIsoConfiguration#objects_spatial_index}) on maps with different densities of objects. For each configuration the
+ * objects are scattered over the map and the viewport visits random positions while some of the objects move. The table shows the average time spent to find the
+ * objects inside the viewport (gather), the average time spent to move the objects and the number of cells created by the index.
+ * 
+ * <pre>
+ * java -cp &lt;classes&gt; uiso_awt_demo.benchmark.ObjectsSpatialIndexBenchmark [frames]
+ * </pre>
+ * 
+ * @author luis
+ */
+public class ObjectsSpatialIndexBenchmark {
+	/* Public: */
+	public static void main(String[] args) {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int[] spatial_indices = {UIsoConstants.UNIFORM_OBJECTS_GRID, UIsoConstants.HASHED_OBJECTS_GRID, UIsoConstants.LOOSE_OBJECTS_QUADTREE};
+		String[] spatial_index_names = {"uniform grid", "hashed grid", "loose quadtree"};
+		int[] cell_sizes = {0, 64};
+
+		System.out.printf("%-16s %10s %12s %14s %14s %8s\n", "index", "cell size", "objects", "gather (us)", "motion (us)", "cells");
+		for (int n_objects : OBJECTS) {
+			for (int cell_size : cell_sizes) {
+				for (int i = 0; i < spatial_indices.length; i++) {
+					long[] times = run(spatial_indices[i], cell_size, n_objects, frames);
+					System.out.printf("%-16s %10s %12d %14.1f %14.1f %8d\n", spatial_index_names[i], cell_size == 0 ? "default" : String.valueOf(cell_size), n_objects,
+							times[0] / 1000.0, times[1] / 1000.0, times[2]);
+				}
+			}
+		}
+	}
+
+	/* Private: */
+	private static final int MAP_SIZE = 200, TILE_VIRTUAL_SIZE = 16, WARM_UP_FRAMES = 20;
+	private static final int[] OBJECTS = {1000, 10000, 100000, 300000};
+
+	/**
+	 * @return the average gather time, the average motion time (both in nanoseconds) and the number of cells
+	 */
+	private static long[] run(int spatial_index, int cell_size, int n_objects, int frames) {
+		UIsoConfiguration configuration = new UIsoConfiguration();
+		configuration.objects_spatial_index = spatial_index;
+		configuration.objects_grid_cell_size = cell_size;
+		configuration.tile_w = 64;
+		configuration.tile_h = 32;
+		configuration.slope_height = 8;
+		configuration.w = MAP_SIZE;
+		configuration.h = MAP_SIZE;
+		configuration.tile_max_z = 15;
+		configuration.viewport_w = 800;
+		configuration.viewport_h = 600;
+		configuration.drawer = new NullDrawer();
+		configuration.simulation_logic = new SimpleSimulationLogic();
+		configuration.tile_factory = new SimpleTileFactory();
+		configuration.use_depth_sorter = true;
+		configuration.string_object_sort_key = null;
+		configuration.string_object_comparator = new uiso.interfaces.IUIsoObjectComparator() {
+			@Override
+			public boolean doesBMustBeDrawnBeforeA(UIsoEngine uiso_engine, UIsoObject a, UIsoObject b) {
+				return false;
+			}
+		};
+
+		UIsoEngine uiso_engine = new UIsoEngine(configuration);
+		Random random = new Random(42);
+		SpriteObject[] objects = new SpriteObject[n_objects];
+		for (int i = 0; i < n_objects; i++) {
+			objects[i] = new SpriteObject();
+			objects[i].setX(random.nextInt(MAP_SIZE * TILE_VIRTUAL_SIZE));
+			objects[i].setY(random.nextInt(MAP_SIZE * TILE_VIRTUAL_SIZE));
+			uiso_engine.insertObject(objects[i]);
+		}
+
+		long gather_time = 0, motion_time = 0;
+		int n_moving_objects = Math.max(1, n_objects / 10);
+		Point center = new Point();
+		for (int frame = 0; frame < frames + WARM_UP_FRAMES; frame++) {
+			long start_time = System.nanoTime();
+			for (int i = 0; i < n_moving_objects; i++) {
+				SpriteObject object = objects[random.nextInt(n_objects)];
+				object.setX(clamp(object.getX() + random.nextInt(9) - 4));
+				object.setY(clamp(object.getY() + random.nextInt(9) - 4));
+				uiso_engine.informObjectMotion(object);
+			}
+			long elapsed_time = System.nanoTime() - start_time;
+
+			if (frame % 10 == 0) {
+				center.x = random.nextInt(MAP_SIZE * TILE_VIRTUAL_SIZE);
+				center.y = random.nextInt(MAP_SIZE * TILE_VIRTUAL_SIZE);
+				uiso_engine.scrollToVirtualCoordinates(center);
+			}
+			uiso_engine.draw();
+
+			if (frame >= WARM_UP_FRAMES) {
+				motion_time += elapsed_time;
+				gather_time += uiso_engine.getSceneGatherTime();
+			}
+		}
+
+		return new long[]{gather_time / frames, motion_time / frames, uiso_engine.getNumberOfObjectsSpatialIndexCells()};
+	}
+
+	private static int clamp(int v) {
+		return Math.max(0, Math.min(MAP_SIZE * TILE_VIRTUAL_SIZE - 1, v));
+	}
+
+	/**
+	 * Draws nothing, so only the engine work is measured (also used by {@link TerraformPlannerCheck}).
+	 */
+	static class NullDrawer implements IDrawer {
+		NullDrawer() {
+			this.tile_sprite = createSprite(64, 32, 32, 0);
+			this.object_sprite = createSprite(32, 64, 16, 60);
+		}
+
+		@Override
+		public void beginDrawing(UIsoEngine uiso_engine) {
+		}
+
+		@Override
+		public void clear() {
+		}
+
+		@Override
+		public void clear(int x, int y, int w, int h) {
+		}
+
+		@Override
+		public void drawImage(int x, int y, UIsoImage image) {
+		}
+
+		@Override
+		public void drawLine(int x1, int y1, int x2, int y2) {
+		}
+
+		@Override
+		public void drawString(int x, int y, String s) {
+		}
+
+		@Override
+		public void drawString(int x, int y, String s, Object font, Object color) {
+		}
+
+		@Override
+		public void getStringBounds(String s, Rectangle bounds, Object font) {
+			bounds.w = bounds.h = 0;
+		}
+
+		@Override
+		public void endDrawing() {
+		}
+
+		@Override
+		public void getTileSprite(Tile tile, Sprite[] sprites) {
+			sprites[0] = this.tile_sprite;
+			sprites[1] = null;
+		}
+
+		@Override
+		public void getObjectSprite(SpriteObject object, Sprite[] sprites) {
+			sprites[0] = this.object_sprite;
+		}
+
+		@Override
+		public void copyArea(int origin_x, int origin_y, int w, int h, int delta_x, int delta_y) {
+		}
+
+		@Override
+		public void setClip(int x, int y, int w, int h) {
+		}
+
+		private Sprite tile_sprite, object_sprite;
+
+		private static Sprite createSprite(int w, int h, int anchor_x, int anchor_y) {
+			Sprite sprite = new Sprite();
+			sprite.setImage(new JavaSEImage(new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB)));
+			sprite.setAnchorX(anchor_x);
+			sprite.setAnchorY(anchor_y);
+			return sprite;
+		}
+	}
+}
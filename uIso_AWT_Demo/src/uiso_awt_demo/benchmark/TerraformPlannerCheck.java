@@ -0,0 +1,294 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uiso_awt_demo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import uiso.Tile;
+import uiso.UIsoConfiguration;
+import uiso.UIsoConstants;
+import uiso.UIsoEngine;
+import uiso.UIsoObject;
+import uiso.interfaces.IUIsoObjectComparator;
+import uiso.util.SimpleSimulationLogic;
+import uiso.util.SimpleTileFactory;
+
+/**
+ * Checks {@link UIsoEngine#canSetTileZ(Tile, int)} and {@link UIsoEngine#setTileZ(Tile, int)} against a copy of the recursive algorithm that the engine used before
+ * the terraform planner. For each tile storage (see {@link UIsoConfiguration#tile_storage}) random changes are tried on the engine and on the copy, which keeps its
+ * own heights, and the answers and the heights of all the tiles are compared after each step. The simulation logic refuses some changes, so the cascades are also
+ * checked when they are stopped.
+ * 
+ * <pre>
+ * java -cp &lt;classes&gt; uiso_awt_demo.benchmark.TerraformPlannerCheck [steps]
+ * </pre>
+ * 
+ * @author luis
+ */
+public class TerraformPlannerCheck {
+	/* Public: */
+	public static void main(String[] args) throws IOException {
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+		int[] tile_storages = {UIsoConstants.TILE_OBJECTS, UIsoConstants.PACKED_TILES, UIsoConstants.MAPPED_TILES};
+		String[] tile_storage_names = {"tile objects", "packed tiles", "mapped tiles"};
+		boolean failed = false;
+
+		System.out.printf("%-16s %8s %8s %14s %14s\n", "storage", "steps", "changes", "can set diffs", "height diffs");
+		for (int i = 0; i < tile_storages.length; i++) {
+			int[] results = run(tile_storages[i], steps);
+			System.out.printf("%-16s %8d %8d %14d %14d\n", tile_storage_names[i], steps, results[0], results[1], results[2]);
+			failed |= results[1] != 0 || results[2] != 0;
+		}
+		if (failed)
+			System.exit(1);
+	}
+
+	/* Private: */
+	private static final int MAP_SIZE = 64, TILE_MAX_Z = 15;
+
+	/**
+	 * @return the number of changes applied, the number of different canSetTileZ answers and the number of steps that ended with different heights
+	 */
+	private static int[] run(int tile_storage, int steps) throws IOException {
+		UIsoConfiguration configuration = new UIsoConfiguration();
+		File mapped_tiles_file = null;
+		configuration.tile_storage = tile_storage;
+		if (tile_storage == UIsoConstants.MAPPED_TILES) {
+			/* The engine only creates the file if it does not exist. */
+			mapped_tiles_file = File.createTempFile("terraform", ".map");
+			mapped_tiles_file.delete();
+			configuration.mapped_tiles_file = mapped_tiles_file.getPath();
+		}
+		configuration.tile_w = 64;
+		configuration.tile_h = 32;
+		configuration.slope_height = 8;
+		configuration.w = MAP_SIZE;
+		configuration.h = MAP_SIZE;
+		configuration.tile_max_z = TILE_MAX_Z;
+		configuration.viewport_w = 800;
+		configuration.viewport_h = 600;
+		configuration.drawer = new ObjectsSpatialIndexBenchmark.NullDrawer();
+		configuration.simulation_logic = new SelectiveSimulationLogic();
+		configuration.tile_factory = new SimpleTileFactory();
+		configuration.use_depth_sorter = true;
+		configuration.string_object_comparator = new IUIsoObjectComparator() {
+			@Override
+			public boolean doesBMustBeDrawnBeforeA(UIsoEngine uiso_engine, UIsoObject a, UIsoObject b) {
+				return false;
+			}
+		};
+
+		UIsoEngine uiso_engine = new UIsoEngine(configuration);
+		RecursiveTerraform reference = new RecursiveTerraform(MAP_SIZE, MAP_SIZE, TILE_MAX_Z);
+		Random random = new Random(42);
+		int n_changes = 0, n_can_set_diffs = 0, n_height_diffs = 0;
+
+		for (int step = 0; step < steps; step++) {
+			int x = random.nextInt(MAP_SIZE + 1), y = random.nextInt(MAP_SIZE + 1), z = random.nextInt(TILE_MAX_Z + 3) - 1;
+			Tile tile = uiso_engine.getTile(x, y);
+			boolean can_set_z = reference.canSetTileZ(x, y, z);
+
+			if (uiso_engine.canSetTileZ(tile, z) != can_set_z)
+				n_can_set_diffs++;
+			/* The engine does not ask the simulation logic when the change is applied, so some refused changes are also applied. */
+			if (can_set_z || random.nextInt(4) == 0) {
+				uiso_engine.setTileZ(tile, z);
+				reference.setTileZ(x, y, z);
+				n_changes++;
+				if (!reference.hasSameHeights(uiso_engine))
+					n_height_diffs++;
+			}
+		}
+
+		if (mapped_tiles_file != null) {
+			uiso_engine.closeTileStorage();
+			mapped_tiles_file.delete();
+		}
+		return new int[]{n_changes, n_can_set_diffs, n_height_diffs};
+	}
+
+	/**
+	 * Refuses the changes of some tiles to some heights, always the same ones.
+	 */
+	private static class SelectiveSimulationLogic extends SimpleSimulationLogic {
+		@Override
+		public boolean canSetTileZ(UIsoEngine uiso_engine, Tile tile, int z) {
+			return canSetTileZ(uiso_engine.getTileX(tile), uiso_engine.getTileY(tile), z);
+		}
+
+		static boolean canSetTileZ(int x, int y, int z) {
+			return (x * 31 + y * 17 + z * 7) % 29 != 0;
+		}
+	}
+
+	/**
+	 * The recursive algorithm used by the engine before the terraform planner. It works on its own heights, in the engine coordinates (the user tiles start at
+	 * {@code tile_max_z}), so the tiles of the border are also changed.
+	 */
+	private static class RecursiveTerraform {
+		RecursiveTerraform(int w, int h, int tile_max_z) {
+			this.tile_max_z = tile_max_z;
+			this.w = w;
+			this.h = h;
+			this.real_w = w + (tile_max_z << 1) - 1;
+			this.real_h = h + (tile_max_z << 1) - 1;
+			this.z = new int[this.real_h + 1][this.real_w + 1];
+		}
+
+		/**
+		 * The same as {@link UIsoEngine#canSetTileZ(Tile, int)}.
+		 */
+		boolean canSetTileZ(int tile_x, int tile_y, int z) {
+			boolean can_set_z;
+			int new_z = UIsoEngine.clamp(0, this.tile_max_z, z), x = tile_x + this.tile_max_z, y = tile_y + this.tile_max_z;
+
+			can_set_z = new_z == this.z[y][x] ? true : this.internalCanSetTileZ(x, y, new_z);
+			for (int i = 0; i < Tile.N_NEIGHBORS && can_set_z; i++) {
+				int neighbour_x = x + Tile.neighbour_x_offset[i];
+				int neighbour_y = y + Tile.neighbour_y_offset[i];
+
+				if (0 <= neighbour_x && neighbour_x <= this.real_w && 0 <= neighbour_y && neighbour_y <= this.real_h) {
+					int difference = (new_z - this.z[neighbour_y][neighbour_x]);
+					boolean increasing = difference > 0;
+
+					if (difference >= 2 && increasing) {
+						can_set_z = can_set_z && this.recursiveSetTileZ(neighbour_x, neighbour_y, new_z - 1, increasing, tile_neighbour_direction[i], true);
+					} else if (difference <= -2 && !increasing) {
+						can_set_z = can_set_z && this.recursiveSetTileZ(neighbour_x, neighbour_y, new_z + 1, increasing, tile_neighbour_direction[i], true);
+					}
+				}
+			}
+			return can_set_z;
+		}
+
+		/**
+		 * The same as {@link UIsoEngine#setTileZ(Tile, int)}, but the slopes are not computed.
+		 */
+		void setTileZ(int tile_x, int tile_y, int z) {
+			int new_z = UIsoEngine.clamp(0, this.tile_max_z, z), x = tile_x + this.tile_max_z, y = tile_y + this.tile_max_z;
+
+			this.z[y][x] = new_z;
+			for (int i = 0; i < Tile.N_NEIGHBORS; i++) {
+				int neighbour_x = x + Tile.neighbour_x_offset[i];
+				int neighbour_y = y + Tile.neighbour_y_offset[i];
+
+				if (0 <= neighbour_x && neighbour_x <= this.real_w && 0 <= neighbour_y && neighbour_y <= this.real_h) {
+					int difference = (new_z - this.z[neighbour_y][neighbour_x]);
+					boolean increasing = difference > 0;
+
+					if (difference >= 2 && increasing) {
+						this.recursiveSetTileZ(neighbour_x, neighbour_y, new_z - 1, increasing, tile_neighbour_direction[i], false);
+					} else if (difference <= -2 && !increasing) {
+						this.recursiveSetTileZ(neighbour_x, neighbour_y, new_z + 1, increasing, tile_neighbour_direction[i], false);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return whether the user tiles of the engine have the same heights
+		 */
+		boolean hasSameHeights(UIsoEngine uiso_engine) {
+			for (int y = 0; y <= this.h; y++)
+				for (int x = 0; x <= this.w; x++)
+					if (uiso_engine.getTileZ(uiso_engine.getTile(x, y)) != this.z[y + this.tile_max_z][x + this.tile_max_z])
+						return false;
+			return true;
+		}
+
+		private static final int DIRECTION_N = 0, DIRECTION_S = 1, DIRECTION_W = 2, DIRECTION_E = 3, DIRECTION_NE = 4, DIRECTION_SE = 5, DIRECTION_SW = 6,
+				DIRECTION_NW = 7;
+		/* The direction of each neighbor in Tile.neighbour_x_offset and Tile.neighbour_y_offset. */
+		private static final byte tile_neighbour_direction[] = {DIRECTION_SE, DIRECTION_SW, DIRECTION_S, DIRECTION_N, DIRECTION_NW, DIRECTION_NE, DIRECTION_E,
+				DIRECTION_W};
+		private static final byte n_neighbours[] = {3, 3, 3, 3, 1, 1, 1, 1};
+		//@formatter:off
+		private static final byte neighbour_direction[][] = {{DIRECTION_N, DIRECTION_NW, DIRECTION_NE} /* N */,
+				{DIRECTION_S, DIRECTION_SE, DIRECTION_SW}, /* S */
+				{DIRECTION_W, DIRECTION_NW, DIRECTION_SW}, /* W */
+				{DIRECTION_E, DIRECTION_SE, DIRECTION_NE}, /* E */
+				{DIRECTION_NE}, /* NE */
+				{DIRECTION_SE}, /* SE */
+				{DIRECTION_SW}, /* SW */
+				{DIRECTION_NW} /* NW */
+		};
+		private static final byte neighbour_x_offset[][] = {{-1, -1, 0} /* N */,
+				{1, 1, 0}, /* S */
+				{-1, -1, 0}, /* W */
+				{1, 1, 0}, /* E */
+				{0}, /* NE */
+				{1}, /* SE */
+				{0}, /* SW */
+				{-1} /* NW */
+		};
+		private static final byte neighbour_y_offset[][] = {{-1, 0, -1}, /* N */
+				{1, 0, 1}, /* S */
+				{1, 0, 1}, /* W */
+				{-1, 0, -1}, /* E */
+				{-1}, /* NE */
+				{0}, /* SE */
+				{1}, /* SW */
+				{0} /* NW */
+		};
+		//@formatter:on
+
+		private int tile_max_z, w, h, real_w, real_h;
+		private int[][] z;
+
+		/**
+		 * Only the changes of the user tiles are asked to the simulation logic.
+		 */
+		private boolean internalCanSetTileZ(int x, int y, int z) {
+			if (this.tile_max_z <= x && x <= this.tile_max_z + this.w && this.tile_max_z <= y && y <= this.tile_max_z + this.h)
+				return SelectiveSimulationLogic.canSetTileZ(x - this.tile_max_z, y - this.tile_max_z, z);
+			return true;
+		}
+
+		private boolean recursiveSetTileZ(int x, int y, int z, boolean increasing, int direction, boolean test_mode) {
+			boolean can_set_z = true;
+			int difference, new_z = UIsoEngine.clamp(0, this.tile_max_z, z);
+
+			if (new_z == this.z[y][x])
+				return true;
+			else if (!test_mode)
+				this.z[y][x] = new_z;
+			else if (!this.internalCanSetTileZ(x, y, new_z))
+				return false;
+
+			for (int i = 0; i < n_neighbours[direction] && can_set_z; i++) {
+				int neighbour_x = x + neighbour_x_offset[direction][i];
+				int neighbour_y = y + neighbour_y_offset[direction][i];
+
+				if (0 <= neighbour_x && neighbour_x <= this.real_w && 0 <= neighbour_y && neighbour_y <= this.real_h) {
+					difference = (new_z - this.z[neighbour_y][neighbour_x]);
+
+					if (difference >= 2 && increasing) {
+						can_set_z = can_set_z && this.recursiveSetTileZ(neighbour_x, neighbour_y, new_z - 1, increasing, neighbour_direction[direction][i], test_mode);
+					} else if (difference <= -2 && !increasing) {
+						can_set_z = can_set_z && this.recursiveSetTileZ(neighbour_x, neighbour_y, new_z + 1, increasing, neighbour_direction[direction][i], test_mode);
+					}
+				}
+			}
+			return can_set_z;
+		}
+	}
+}
@@ -19,10 +19,13 @@
 
 package uiso_awt_demo.drawer;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
+import java.awt.Composite;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -34,7 +37,7 @@ import uiso.SpriteObject;
 import uiso.Tile;
 import uiso.UIsoEngine;
 import uiso.UIsoImage;
-import uiso.interfaces.IDrawer;
+import uiso.interfaces.IChunkDrawer;
 import uiso.util.sprite_loader.SimpleSpriteLoader;
 import uiso_awt_demo.image.JavaSEImage;
 import uiso_awt_demo.image.JavaSEImageManipulator;
@@ -44,7 +47,7 @@ import uiso_awt_demo.object.Common;
 import uiso_awt_demo.object.MySpriteObject;
 import uiso_awt_demo.simulation.SimulationConstants;
 
-public class JavaSEDrawer implements IDrawer {
+public class JavaSEDrawer implements IChunkDrawer {
 
 	/* Public: */
 	@SuppressWarnings("unchecked")
@@ -84,6 +87,7 @@ public class JavaSEDrawer implements IDrawer {
 		this.wall.setImage(JavaSEImage.loadJavaSEImage("wall.png"));
 		this.wall.setAnchorX(15);
 		this.wall.setAnchorY(119);
+		this.wall.computeAlphaMask();
 
 		this.canvas_h = canvas_h;
 		this.canvas_w = canvas_w;
@@ -183,7 +187,7 @@ public class JavaSEDrawer implements IDrawer {
 			break;
 		}
 
-		if (tile == this.selected_tile && myTile.getTileType() != TileType.BARE_GROUND) {
+		if (tile.equals(this.selected_tile) && myTile.getTileType() != TileType.BARE_GROUND) {
 			sprites[1] = this.selection_sprites.get(tile_index);
 			sprites[2] = null;
 		} else
@@ -212,10 +216,35 @@ public class JavaSEDrawer implements IDrawer {
 
 	@Override
 	public void clear(int x, int y, int w, int h) {
+		if (this.image_g2 != null) {
+			Composite composite = this.g2.getComposite();
+			this.g2.setComposite(AlphaComposite.Clear);
+			this.g2.fillRect(x, y, w, h);
+			this.g2.setComposite(composite);
+			return;
+		}
 		this.g2.setColor(SimulationConstants.CLEAR_COLOR);
 		this.g2.fillRect(x, y, w, h);
 	}
 
+	@Override
+	public UIsoImage createImage(int w, int h) {
+		return new JavaSEImage(new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB));
+	}
+
+	@Override
+	public void setDrawingTarget(UIsoImage image) {
+		if (this.image_g2 != null) {
+			this.image_g2.dispose();
+			this.image_g2 = null;
+			this.g2 = this.viewport_g2;
+		}
+		if (image != null) {
+			this.viewport_g2 = this.g2;
+			this.g2 = this.image_g2 = ((JavaSEImage) image).getBufferedImage().createGraphics();
+		}
+	}
+
 	@Override
 	public void drawString(int x, int y, String s, Object font, Object color) {
 		drawString(this.g2, x, y, s, (Font) font, (Color) color, SimulationConstants.CLEAR_COLOR);
@@ -236,7 +265,7 @@ public class JavaSEDrawer implements IDrawer {
 
 	private Map<Integer, Sprite> grass_sprites = new HashMap<Integer, Sprite>(), selection_sprites = new HashMap<Integer, Sprite>(),
 			bare_land = new HashMap<Integer, Sprite>(), castle_floor = new HashMap<Integer, Sprite>();
-	private Graphics2D g2;
+	private Graphics2D g2, viewport_g2, image_g2;
 	private Sprite wall;
 	private Tile selected_tile;
 	private int canvas_w, canvas_h;
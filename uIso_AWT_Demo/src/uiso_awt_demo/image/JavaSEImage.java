@@ -70,6 +70,11 @@ public class JavaSEImage extends UIsoImage {
 		return this.image.getHeight();
 	}
 
+	@Override
+	public boolean isOpaque(int x, int y) {
+		return (this.image.getRGB(x, y) >>> 24) != 0;
+	}
+
 	public BufferedImage getBufferedImage() {
 		return this.image;
 	}
@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import uiso.UIsoEngine;
+import uiso.UIsoObject;
 import uiso_awt_demo.map.MyTile;
 import uiso_awt_demo.map.TileType;
 import uiso_awt_demo.object.Wall.WallType;
@@ -80,7 +81,6 @@ public class CastleBuilder {
 		}
 
 		this.especial_positions = Collections.unmodifiableMap(this.especial_positions);
-		System.out.println("built");
 	}
 
 	public Map<Character, MyTile> getEspecialTilesMap() {
@@ -92,9 +92,21 @@ public class CastleBuilder {
 	private int base_x, base_y;
 	private String[] blue_prints;
 	private Map<Character, MyTile> especial_positions = new HashMap<Character, MyTile>();
+	private UIsoObject[] objects_on_tile = new UIsoObject[4];
 
-	public void deleteWall(int x, int y, UIsoEngine uiso_engine){
-		uiso_engine.deleteObject(x,y);
+	public void deleteWall(int x, int y, UIsoEngine uiso_engine) {
+		int n = uiso_engine.getObjectsOnTile(uiso_engine.getTile(x, y), this.objects_on_tile);
+
+		if (n > this.objects_on_tile.length) {
+			this.objects_on_tile = new UIsoObject[n];
+			uiso_engine.getObjectsOnTile(uiso_engine.getTile(x, y), this.objects_on_tile);
+		}
+		/* Only walls are removed (e.g, the minotaur can be on the tile). */
+		for (int i = 0; i < n; i++) {
+			if (this.objects_on_tile[i] instanceof Wall)
+				uiso_engine.removeObject(this.objects_on_tile[i]);
+			this.objects_on_tile[i] = null;
+		}
 	}
 
 	public void createWall(int x, int y, WallType wall_type, UIsoEngine uiso_engine) {
@@ -102,31 +114,25 @@ public class CastleBuilder {
 		
 		wall.setX((x) * SimulationConstants.TILE_VIRTUAL_SIZE + wall_type.getTilePositionOffsetX());
 		wall.setY((y) * SimulationConstants.TILE_VIRTUAL_SIZE + wall_type.getTilePositionOffsetY());		
-		System.out.println("x test " + x + " " + (x) * SimulationConstants.TILE_VIRTUAL_SIZE + wall_type.getTilePositionOffsetX());
+		wall.setVirtualSize(wall_type.getW(), wall_type.getH(), Wall.HEIGHT);
 		wall.setEnum(wall_type);
 		uiso_engine.insertObject(wall);
 		//wall.createSprites();
-		System.out.println("make wall? " + wall);
 	}
 
 	public void createWalls(int x, int y, char c, UIsoEngine uiso_engine, MyTile tile) {
-		System.out.println("c " + c + " " + x + "," + y);
 		switch (c) {
 			case 'G': 
 				if (this.safeGetChar(x + 1, y) != ' ' && this.safeGetChar(x - 1, y) != ' ') {
 					if (this.safeGetChar(x + 1, y) == 'G') {
-						System.out.println("x gate after");
 						this.createWall(x, y, WallType.X_GATE_AFTER, uiso_engine);
 					} else {
-						System.out.println("x gate before");
 						this.createWall(x, y, WallType.X_GATE_BEFORE, uiso_engine);
 					}
 				} else {
 					if (this.safeGetChar(x, y + 1) == 'G') {
-						System.out.println("y gate after");
 						this.createWall(x, y, WallType.Y_GATE_AFTER, uiso_engine);
 					} else {
-						System.out.println("y gate before");
 						this.createWall(x, y, WallType.Y_GATE_BEFORE, uiso_engine);
 					}
 				}
@@ -134,27 +140,22 @@ public class CastleBuilder {
 			case '+':
 				this.createWall(x, y, WallType.CROSS, uiso_engine);
 				tile.setPassability(false);
-				System.out.println("cross");
 			break;
 			case '|':
 				this.createWall(x, y, WallType.X, uiso_engine);
 				tile.setPassability(false);
-				System.out.println("x");
 			break;
 			case '-':
 				this.createWall(x, y, WallType.Y, uiso_engine);
 				tile.setPassability(false);
-				System.out.println("y");
 			break;
 			case 'D':
 			this.deleteWall(x, y, uiso_engine);
 			tile.setPassability(true);
-			System.out.println("Delete");
 			break;
 			default:
 				if (c != 'O' && Character.isLetter(c)) {
 					this.especial_positions.put(c, tile);
-					System.out.println("default");					
 				}
 			break;
 		}
@@ -162,6 +163,7 @@ public class CastleBuilder {
 		if (c != 'O') {
 			TerraformUtils.setAllTileCornersZ(0, uiso_engine, tile);
 			this.adjustTile(x, y, c, uiso_engine, tile);
+			uiso_engine.informTileAppearanceChange(tile);
 		}
 	}
 
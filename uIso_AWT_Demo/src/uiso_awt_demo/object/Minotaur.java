@@ -34,6 +34,8 @@ public class Minotaur extends MySpriteObjectWithDirection {
 	/* These constants are used to position the Minotaur at the center of a tile. */
 	public static final int TILE_OFFSET_X = 0;
 	public static final int TILE_OFFSET_Y = 4;
+	/* Virtual size used by the depth sorter. */
+	public static final int SIZE_X = 8, SIZE_Y = 8, SIZE_Z = 64;
 
 	/* TODO: Improve this code. Both loops are doing almost the same thing. */
 	public static Map<Integer, Sprite> createSprites() {
@@ -55,6 +57,7 @@ public class Minotaur extends MySpriteObjectWithDirection {
 
 	public Minotaur() {
 		this.setObjectType(ObjectType.MINOTAUR);
+		this.setVirtualSize(SIZE_X, SIZE_Y, SIZE_Z);
 		this.setDirection(Direction.SW);
 		this.state = State.STOPPED;
 	}
@@ -112,9 +115,10 @@ public class Minotaur extends MySpriteObjectWithDirection {
 
 						this.setX(this.getX() + delta_x);
 						this.setY(this.getY() + delta_y);
-						uiso_engine.informObjectMotion(this);
 					}
 				}
+				/* The sprite has changed even if it has not moved. */
+				uiso_engine.informObjectSizeChange(this);
 			}
 
 		} else {
@@ -127,6 +131,7 @@ public class Minotaur extends MySpriteObjectWithDirection {
 					this.stopped_state_index = 0;
 				}
 				this.setSpriteIndex(STOPPED_STATE_SPRITE_INDEX[this.stopped_state_index]);
+				uiso_engine.informObjectSizeChange(this);
 			}
 		}
 
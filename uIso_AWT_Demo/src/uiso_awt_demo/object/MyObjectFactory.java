@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012, 2015 Luis Henrique O. Rios
+ *
+ * This file is part of uIsometric Engine.
+ *
+ * uIsometric Engine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * uIsometric Engine is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with uIsometric Engine.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uiso_awt_demo.object;
+
+import uiso.UIsoObject;
+import uiso.interfaces.IUIsoObjectFactory;
+
+/**
+ * Saves the walls and the minotaur in the snapshots using their {@link ObjectType}. The terraform icon is not saved.
+ */
+public class MyObjectFactory implements IUIsoObjectFactory {
+	/* Public: */
+
+	@Override
+	public int getObjectType(UIsoObject object) {
+		if (!(object instanceof MySpriteObject))
+			return -1;
+		ObjectType object_type = ((MySpriteObject<?>) object).getObjectType();
+		return object_type == ObjectType.TERRAFORM_ICON ? -1 : object_type.ordinal();
+	}
+
+	@Override
+	public UIsoObject buildNewObject(int type) {
+		switch (ObjectType.values()[type]) {
+			case MINOTAUR:
+				return this.minotaur = new Minotaur();
+			case WALL:
+				return new Wall();
+			default:
+				throw new IllegalArgumentException("Unknown object type: " + type);
+		}
+	}
+
+	/**
+	 * @return the last minotaur built
+	 */
+	public Minotaur getMinotaur() {
+		return this.minotaur;
+	}
+
+	/* Private: */
+	private Minotaur minotaur;
+}
@@ -49,7 +49,7 @@ public class PathFinder {
 			n = open.poll();
 			if (!n.closed) {
 				n.closed = true;
-				if (goal_tile == n.tile)
+				if (goal_tile.equals(n.tile))
 					break;
 
 				n_expansions++;
@@ -60,7 +60,7 @@ public class PathFinder {
 		}
 
 		/* Has a solution been found ? */
-		if (goal_tile == n.tile) {
+		if (goal_tile.equals(n.tile)) {
 			List<Point> path = new ArrayList<Point>();
 			while (n != null) {
 				assert (n.tile.isPassable());
@@ -99,7 +99,7 @@ public class PathFinder {
 			} else if (o instanceof PathFinder.Node) {
 				Node n = (Node) o;
 
-				return this.tile == n.tile;
+				return this.tile.equals(n.tile);
 			}
 
 			return false;
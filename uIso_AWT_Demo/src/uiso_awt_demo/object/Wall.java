@@ -28,6 +28,9 @@ import uiso_awt_demo.simulation.SimulationConstants;
 
 public class Wall extends MySpriteObject<Wall.WallType> {
 	/* Public: */
+	/* Virtual height used by the depth sorter. */
+	public static final int HEIGHT = 110;
+
 	public static enum WallType {
 
 		//@formatter:off
@@ -87,6 +90,14 @@ public class Wall extends MySpriteObject<Wall.WallType> {
 			return offset;
 		}
 
+		public int getW() {
+			return this.w;
+		}
+
+		public int getH() {
+			return this.h;
+		}
+
 		/* Private: */
 		private int w, h;
 		private Alignment x_alignment, y_alignment;
@@ -70,6 +70,9 @@ public class SimulationConstants {
 
 	public static final UIsoConfiguration UISO_CONFIGURATION;
 
+	/* Map and castle saved by the last run (see UIsoEngine.saveSnapshot). */
+	public static final String SNAPSHOT_FILE = Paths.get(System.getProperty("java.io.tmpdir"), "uiso_demo_castle.snapshot").toString();
+
 	//public static final Rectangle EDITABLE_AREA = new Rectangle(0, 0, 20, 100);
 	//public static final Rectangle EMPTY_AREA = new Rectangle(20, 0, 20, 100);
 	public static final Rectangle CASTLE_LAND_AREA = new Rectangle(0, 0, 48, 91);
@@ -78,7 +81,13 @@ public class SimulationConstants {
 
 	static {
 		UISO_CONFIGURATION = new UIsoConfiguration();
-		UISO_CONFIGURATION.use_dirty_rectangle = false;
+		UISO_CONFIGURATION.use_dirty_rectangle = true;
+		UISO_CONFIGURATION.use_scroll_blit = true;
+		UISO_CONFIGURATION.terrain_chunk_size = 8;
+		UISO_CONFIGURATION.use_depth_sorter = true;
+		UISO_CONFIGURATION.use_deferred_object_motion = true;
+		UISO_CONFIGURATION.use_object_appearance_cache = true;
+		UISO_CONFIGURATION.use_visible_objects_set = true;
 		UISO_CONFIGURATION.max_objects_in_the_scene = 200;
 		UISO_CONFIGURATION.tile_h = 32;
 		UISO_CONFIGURATION.tile_w = 64;
@@ -88,7 +97,6 @@ public class SimulationConstants {
 		UISO_CONFIGURATION.tile_max_z = 15;
 		UISO_CONFIGURATION.tile_factory = new MyTileFactory();
 
-		UISO_CONFIGURATION.sprite_object_comparator = new SimulationLogic.MySpriteObjectComparator();
 		UISO_CONFIGURATION.string_object_comparator = new SimulationLogic.MyStringObjectComparator();
 
 		/* Loads castle blueprint. */
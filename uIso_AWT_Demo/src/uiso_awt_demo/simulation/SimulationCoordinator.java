@@ -35,6 +35,7 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -166,6 +167,11 @@ public class SimulationCoordinator implements Runnable, MouseListener, MouseMoti
 				configuration.simulation_logic = this.simulation_logic = new SimulationLogic();
 				configuration.debug = this.debug;
 
+				/* The dirty rectangle system needs a surface that keeps its contents between two frames. */
+				if (configuration.use_dirty_rectangle)
+					this.uiso_engine_surface =
+							this.canvas.getGraphicsConfiguration().createCompatibleImage(this.uiso_engine_viewport_w, this.uiso_engine_viewport_h);
+
 				Graphics2D g2 = this.createGraphics2D();
 				this.drawer.setGraphics2D(g2);
 
@@ -194,8 +200,17 @@ public class SimulationCoordinator implements Runnable, MouseListener, MouseMoti
 							g2.setClip(SimulationConstants.UISO_ENGINE_VIEWPORT_DELTA_W, SimulationConstants.UISO_ENGINE_VIEWPORT_DELTA_H, this.uiso_engine_viewport_w,
 									this.uiso_engine_viewport_h);
 							g2.translate(SimulationConstants.UISO_ENGINE_VIEWPORT_DELTA_W, SimulationConstants.UISO_ENGINE_VIEWPORT_DELTA_H);
-							this.drawer.setGraphics2D(g2);
-							this.uiso_engine.draw();
+							if (this.uiso_engine_surface != null) {
+								Graphics2D surface_g2 = this.uiso_engine_surface.createGraphics();
+								surface_g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+								this.drawer.setGraphics2D(surface_g2);
+								this.uiso_engine.draw();
+								surface_g2.dispose();
+								g2.drawImage(this.uiso_engine_surface, 0, 0, null);
+							} else {
+								this.drawer.setGraphics2D(g2);
+								this.uiso_engine.draw();
+							}
 						}
 
 						g2.translate(-SimulationConstants.UISO_ENGINE_VIEWPORT_DELTA_W, -SimulationConstants.UISO_ENGINE_VIEWPORT_DELTA_H);
@@ -230,6 +245,7 @@ public class SimulationCoordinator implements Runnable, MouseListener, MouseMoti
 				Thread.sleep(time_to_sleep);
 			}
 
+			this.simulation_logic.finish(this.uiso_engine);
 			this.strategy.dispose();
 
 		} catch (InterruptedException e) {
@@ -312,6 +328,7 @@ public class SimulationCoordinator implements Runnable, MouseListener, MouseMoti
 	private volatile boolean finished = false, paused = false;
 	private int uiso_engine_viewport_w, uiso_engine_viewport_h, canvas_w, canvas_h;
 	private BufferStrategy strategy;
+	private BufferedImage uiso_engine_surface; /* Only used with the dirty rectangle system. */
 	private JavaSEDrawer drawer;
 	private UIsoEngine uiso_engine;
 	private MyCanvas canvas;
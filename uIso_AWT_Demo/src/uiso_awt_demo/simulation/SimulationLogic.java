@@ -30,12 +30,11 @@ import uiso.Tile;
 import uiso.UIsoConstants;
 import uiso.UIsoEngine;
 import uiso.UIsoObject;
-import uiso.interfaces.ISimulationLogic;
+import uiso.interfaces.IBulkSimulationLogic;
 import uiso.interfaces.IUIsoObjectComparator;
 import uiso_awt_demo.drawer.JavaSEDrawer;
 import uiso_awt_demo.gui.DebugInformationPanel;
 import uiso_awt_demo.map.MyTile;
-import uiso_awt_demo.object.Minotaur;
 import uiso_awt_demo.object.CastleBuilder;
 import uiso_awt_demo.object.MySpriteObject;
 import uiso_awt_demo.object.PathFinder;
@@ -46,7 +45,7 @@ import uiso_awt_demo.simulation.SimulationCoordinator.ScrollToVirtualCoordinates
 import uiso_awt_demo.simulation.SimulationCoordinator.ScrollViewportCenterWithRealCoordinatesDeltaEvent;
 import uiso_awt_demo.util.TerraformUtils;
 
-class SimulationLogic implements ISimulationLogic {
+class SimulationLogic implements IBulkSimulationLogic {
 
 	public void init(UIsoEngine uiso_engine) {
 		MySpriteObject.init();
@@ -72,6 +71,13 @@ class SimulationLogic implements ISimulationLogic {
 		return false;
 	}
 
+	/**
+	 * Saves the simulation state, so the next run starts where this one has stopped.
+	 */
+	public void finish(UIsoEngine uiso_engine) {
+		this.simulation_state.save(uiso_engine);
+	}
+
 	@Override
 	public boolean canSetTileZ(UIsoEngine uiso_engine, Tile tile, int z) {
 		return true;
@@ -85,6 +91,10 @@ class SimulationLogic implements ISimulationLogic {
 	public void informTileSlopeUpdate(UIsoEngine uiso_engine, Tile tile, int old_slope) {
 	}
 
+	@Override
+	public void informTilesUpdate(UIsoEngine uiso_engine, int min_x, int min_y, int max_x, int max_y) {
+	}
+
 	public void updateDebugInformationPanel(UIsoEngine uIsoEngine, final DebugInformationPanel debugInformationPanel) {
 		final Point fine_coordinates = new Point();
 		fine_coordinates.copyFrom(SimulationLogic.this.fine_coordinates);
@@ -116,24 +126,6 @@ class SimulationLogic implements ISimulationLogic {
 	}
 
 	/* Default: */
-	static class MySpriteObjectComparator implements IUIsoObjectComparator {
-		@Override
-		public boolean doesBMustBeDrawnBeforeA(UIsoEngine uiso_engine, UIsoObject a, UIsoObject b) {
-			int a_tile_x = uiso_engine.getTileX(a);
-			int b_tile_x = uiso_engine.getTileX(b);
-			int a_tile_y = uiso_engine.getTileY(a);
-			int b_tile_y = uiso_engine.getTileY(b);
-
-			if (a_tile_x == b_tile_x) {
-				if (a_tile_y == b_tile_y) {
-					return b instanceof Minotaur;
-				}
-				return a_tile_y > b_tile_y;
-			}
-			return a_tile_x > b_tile_x;
-		}
-	};
-
 	static class MyStringObjectComparator implements IUIsoObjectComparator {
 		@Override
 		public boolean doesBMustBeDrawnBeforeA(UIsoEngine uiso_engine, UIsoObject a, UIsoObject b) {
@@ -284,11 +276,21 @@ class SimulationLogic implements ISimulationLogic {
 		//	drawer.setSelectedTile(this.tile_under_mouse_pointer);
 		//} else 
 		{
+			Tile selected_tile = null;
+
 			uiso_engine.removeObject(TerraformIcon.terraform_icon);
 			if (SimulationConstants.CASTLE_LAND_AREA.contains(tile_x, tile_y) && uiso_engine.tile_position_relative_map_polygon == UIsoConstants.INSIDE_POLYGON) {
-				drawer.setSelectedTile(this.tile_under_mouse_pointer);
-			} else {
-				drawer.setSelectedTile(null);
+				selected_tile = this.tile_under_mouse_pointer;
+			}
+
+			if (selected_tile == null ? drawer.getSelectedTile() != null : !selected_tile.equals(drawer.getSelectedTile())) {
+				Tile previous_selected_tile = drawer.getSelectedTile();
+
+				drawer.setSelectedTile(selected_tile);
+				if (previous_selected_tile != null)
+					uiso_engine.informTileAppearanceChange(previous_selected_tile);
+				if (selected_tile != null)
+					uiso_engine.informTileAppearanceChange(selected_tile);
 			}
 		}
 	}
@@ -19,6 +19,8 @@
 
 package uiso_awt_demo.simulation;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -27,11 +29,14 @@ import uiso.Point;
 import uiso.StringObject;
 import uiso.Tile;
 import uiso.UIsoEngine;
+import uiso.UIsoObject;
+import uiso.exceptions.InvalidSnapshotException;
 import uiso_awt_demo.map.MyTile;
 import uiso_awt_demo.object.Alignment;
 import uiso_awt_demo.object.AnimatedString;
 import uiso_awt_demo.object.CastleBuilder;
 import uiso_awt_demo.object.Minotaur;
+import uiso_awt_demo.object.MyObjectFactory;
 import uiso_awt_demo.util.RandomUtils;
 
 class SimulationState {
@@ -115,10 +120,15 @@ class SimulationState {
 
 		CastleBuilder castle_builder =
 				new CastleBuilder(SimulationConstants.CASTLE_LAND_AREA, Alignment.LEFT_ALIGNMENT, Alignment.CENTER_ALIGNMENT, SimulationConstants.CASTLE_BLUEPRINT);
+		this.castle_builder = castle_builder;
+
+		/* Loads the castle saved by a previous run, so it is not built again. */
+		if (this.load(uiso_engine))
+			return;
+
 		castle_builder.build(uiso_engine);
 		MyTile minotaur_initial_tile = castle_builder.getEspecialTilesMap().get('M');
 
-		this.castle_builder = castle_builder;
 		this.minotaur = new Minotaur();
 		this.minotaur.setX(uiso_engine.getTileX(minotaur_initial_tile) * SimulationConstants.TILE_VIRTUAL_SIZE + Minotaur.TILE_OFFSET_X);
 		this.minotaur.setY(uiso_engine.getTileY(minotaur_initial_tile) * SimulationConstants.TILE_VIRTUAL_SIZE + Minotaur.TILE_OFFSET_Y);
@@ -133,6 +143,18 @@ class SimulationState {
 		//uiso_engine.insertObject(this.castle_entrance);
 
 		uiso_engine.scrollToTile(minotaur_initial_tile);
+		this.save(uiso_engine);
+	}
+
+	/**
+	 * Saves the map, the castle walls and the minotaur in the snapshot file.
+	 */
+	public void save(UIsoEngine uiso_engine) {
+		try {
+			uiso_engine.saveSnapshot(SimulationConstants.SNAPSHOT_FILE, this.object_factory);
+		} catch (IOException e) {
+			System.err.println("The snapshot could not be saved: " + e.getMessage());
+		}
 	}
 
 	public AnimatedString castle_entrance;
@@ -140,4 +162,36 @@ class SimulationState {
 	public CastleBuilder castle_builder;
 	public Random random = new Random();
 	public int tick;
+
+	/* Private: */
+	private MyObjectFactory object_factory = new MyObjectFactory();
+
+	private boolean load(UIsoEngine uiso_engine) {
+		if (!new File(SimulationConstants.SNAPSHOT_FILE).exists())
+			return false;
+
+		UIsoObject[] loaded_objects;
+		try {
+			loaded_objects = uiso_engine.loadSnapshot(SimulationConstants.SNAPSHOT_FILE, this.object_factory);
+		} catch (IOException e) {
+			System.err.println("The snapshot could not be loaded: " + e.getMessage());
+			return false;
+		} catch (InvalidSnapshotException e) {
+			System.err.println("The snapshot could not be loaded: " + e.getMessage());
+			return false;
+		} catch (IllegalArgumentException e) {
+			/* Thrown by the object factory for an unknown object type. The engine has not been changed. */
+			System.err.println("The snapshot could not be loaded: " + e.getMessage());
+			return false;
+		}
+		this.minotaur = this.object_factory.getMinotaur();
+		if (this.minotaur == null) {
+			/* The castle is built again, so its walls must not be duplicated. */
+			System.err.println("The snapshot could not be loaded: it has no minotaur.");
+			for (UIsoObject object : loaded_objects)
+				uiso_engine.removeObject(object);
+			return false;
+		}
+		return true;
+	}
 }
\ No newline at end of file